@@ -0,0 +1,34 @@
+"""
+Compares the fitness evaluators on the saved gps/*.json problems.
+
+usage: python benchmark.py [java_path] [population_size] [generations]
+"""
+import contextlib
+import io
+import sys
+import time
+from pathlib import Path
+
+from tiny_gp import TinyGP, Evaluator
+
+if __name__ == "__main__":
+    java_path = sys.argv[1] if len(sys.argv) > 1 else "java"
+    population_size = int(sys.argv[2]) if len(sys.argv) > 2 else 20000
+    generations = int(sys.argv[3]) if len(sys.argv) > 3 else 10
+    TinyGP.set_java_path(java_path)
+
+    evaluators = list(Evaluator)
+    print(f"{'problem':<22}" + "".join(f"{e.name:>12}" for e in evaluators))
+    for file in sorted(Path("gps").glob("*.json")):
+        gp = TinyGP.from_json(str(file))
+        gp.population_size = population_size
+        gp.generations = generations
+        gp.goal_fitness = 0.0  # always run every generation
+        times = []
+        for evaluator in evaluators:
+            gp.evaluator = evaluator
+            start = time.perf_counter()
+            with contextlib.redirect_stdout(io.StringIO()):
+                gp.fit(gp.targets, 1)
+            times.append(time.perf_counter() - start)
+        print(f"{file.stem:<22}" + "".join(f"{t:>11.2f}s" for t in times))
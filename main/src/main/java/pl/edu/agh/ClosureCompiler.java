@@ -0,0 +1,230 @@
+package pl.edu.agh;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.function.Supplier;
+
+// Compiles simplified programs into trees of node objects, so the opcode switch runs once
+// per node at compile time instead of once per node for every block of fitness cases.
+// A context keeps its compiler, whose nodes are set up again for every program it compiles.
+final class ClosureCompiler {
+    final TinyGP.EvaluationContext ctx;
+    int pc = 0;
+    int height = 0;
+
+    // the nodes of the tree compiled last, one pool per class; Cached and Recorder nodes outlive the
+    // evaluation (the subtree cache keeps recorders) and aren't pooled
+    final Pool<Constant> constants = new Pool<>(Constant::new);
+    final Pool<Variable> variables = new Pool<>(Variable::new);
+    final Pool<Add> adds = new Pool<>(Add::new);
+    final Pool<Sub> subs = new Pool<>(Sub::new);
+    final Pool<Mul> muls = new Pool<>(Mul::new);
+    final Pool<Div> divs = new Pool<>(Div::new);
+    final Pool<Exp> exps = new Pool<>(Exp::new);
+    final Pool<Sin> sins = new Pool<>(Sin::new);
+    final Pool<Cos> coses = new Pool<>(Cos::new);
+    final Pool<?>[] pools = {constants, variables, adds, subs, muls, divs, exps, sins, coses};
+
+    static final class Pool<T extends Node> {
+        final Supplier<T> factory;
+        final ArrayList<T> nodes = new ArrayList<>();
+        int used;
+
+        Pool(Supplier<T> factory) {
+            this.factory = factory;
+        }
+
+        T next() {
+            if (used == nodes.size())
+                nodes.add(factory.get());
+            return nodes.get(used++);
+        }
+    }
+
+    ClosureCompiler(TinyGP.EvaluationContext ctx) {
+        this.ctx = ctx;
+    }
+
+    /**
+     * @return the root of the compiled tree, valid until the next compile in ctx; ctx.slots is grown to the
+     * scratch blocks the tree uses
+     */
+    static Node compile(TinyGP.EvaluationContext ctx) {
+        if (ctx.closures == null)
+            ctx.closures = new ClosureCompiler(ctx);
+        ClosureCompiler compiler = ctx.closures;
+        compiler.pc = 0;
+        compiler.height = 0;
+        for (Pool<?> pool : compiler.pools)
+            pool.used = 0;
+        ctx.recorders.clear();
+        if (TinyGP.subtree_cache != null)
+            SubtreeCache.hash(ctx);
+        Node root = compiler.node(0);
+        if (compiler.pc != ctx.length)
+            throw new IllegalStateException("Malformed program");
+        TinyGP.reserve_slots(ctx, compiler.height);
+        return root;
+    }
+
+    // subtrees found in the subtree cache are read from their stored vectors, admitted ones are recorded
+    Node node(int depth) {
+        SubtreeCache cache = TinyGP.subtree_cache;
+        int start = pc, size = cache == null ? 0 : ctx.subtree_size[start];
+        if (size < SubtreeCache.MIN_SIZE)
+            return primitive(depth);
+        long hash1 = ctx.subtree_hash1[start], hash2 = ctx.subtree_hash2[start];
+        int seen = cache.count(hash1, hash2);
+        double[] values = cache.get(hash1, hash2, size);
+        if (values != null) {
+            pc += size;
+            return new Cached(values);
+        }
+        Node node = primitive(depth);
+        if (!cache.admits(seen, size))
+            return node;
+        Recorder recorder = new Recorder(node, new SubtreeCache.Key(hash1, hash2), size);
+        ctx.recorders.add(recorder);
+        return recorder;
+    }
+
+    // a binary node at depth d keeps its first argument in slots[d] while the second one is evaluated
+    Node primitive(int depth) {
+        int primitive = ctx.operations[pc];
+        if (primitive == 0) {
+            Constant constant = constants.next();
+            constant.value = ctx.numbers[pc++];
+            return constant;
+        }
+        pc++;
+        if (primitive < TinyGP.FSET_START) {
+            Variable variable = variables.next();
+            variable.column = primitive - 1;
+            return variable;
+        }
+        if (primitive > TinyGP.FSET_2ARG_END) {
+            Unary unary = switch (primitive) {
+                case TinyGP.EXP -> exps.next();
+                case TinyGP.SIN -> sins.next();
+                case TinyGP.COS -> coses.next();
+                default -> throw new IllegalStateException("Unknown op: " + primitive);
+            };
+            unary.a = node(depth);
+            return unary;
+        }
+        height = Math.max(height, depth + 1);
+        Binary binary = switch (primitive) {
+            case TinyGP.ADD -> adds.next();
+            case TinyGP.SUB -> subs.next();
+            case TinyGP.MUL -> muls.next();
+            case TinyGP.DIV -> divs.next();
+            default -> throw new IllegalStateException("Unknown op: " + primitive);
+        };
+        binary.slot = depth;
+        binary.a = node(depth + 1);
+        binary.b = node(depth + 1);
+        return binary;
+    }
+
+    static final class Cached extends Node {
+        final double[] values;
+
+        Cached(double[] values) {
+            this.values = values;
+        }
+
+        @Override
+        void eval(double[][] slots, int from, int n, double[] out) {
+            System.arraycopy(values, from, out, 0, n);
+        }
+    }
+
+    // copies every block of its subtree's output, complete once all fitness cases have been evaluated
+    static final class Recorder extends Node {
+        final Node node;
+        final SubtreeCache.Key key;
+        final int size;
+        final double[] values = new double[TinyGP.fitnesscases];
+
+        Recorder(Node node, SubtreeCache.Key key, int size) {
+            this.node = node;
+            this.key = key;
+            this.size = size;
+        }
+
+        @Override
+        void eval(double[][] slots, int from, int n, double[] out) {
+            node.eval(slots, from, n, out);
+            System.arraycopy(out, 0, values, from, n);
+        }
+    }
+
+    static final class Constant extends Node {
+        double value;
+
+        void eval(double[][] slots, int from, int n, double[] out) {
+            Arrays.fill(out, 0, n, value);
+        }
+    }
+
+    static final class Variable extends Node {
+        int column;
+
+        void eval(double[][] slots, int from, int n, double[] out) {
+            System.arraycopy(TinyGP.columns[column], from, out, 0, n);
+        }
+    }
+
+    abstract static class Binary extends Node {
+        Node a, b;
+        int slot;
+
+        final void eval(double[][] slots, int from, int n, double[] out) {
+            double[] first = slots[slot];
+            a.eval(slots, from, n, first);
+            b.eval(slots, from, n, out);
+            apply(first, out, n);
+        }
+
+        abstract void apply(double[] a, double[] b, int n);
+    }
+
+    abstract static class Unary extends Node {
+        Node a;
+
+        final void eval(double[][] slots, int from, int n, double[] out) {
+            a.eval(slots, from, n, out);
+            apply(out, n);
+        }
+
+        abstract void apply(double[] a, int n);
+    }
+
+    static final class Add extends Binary {
+        void apply(double[] a, double[] b, int n) { TinyGP.kernels.add(a, b, n); }
+    }
+
+    static final class Sub extends Binary {
+        void apply(double[] a, double[] b, int n) { TinyGP.kernels.sub(a, b, n); }
+    }
+
+    static final class Mul extends Binary {
+        void apply(double[] a, double[] b, int n) { TinyGP.kernels.mul(a, b, n); }
+    }
+
+    static final class Div extends Binary {
+        void apply(double[] a, double[] b, int n) { TinyGP.kernels.div(a, b, n); }
+    }
+
+    static final class Exp extends Unary {
+        void apply(double[] a, int n) { TinyGP.kernels.exp(a, n); }
+    }
+
+    static final class Sin extends Unary {
+        void apply(double[] a, int n) { TinyGP.kernels.sin(a, n); }
+    }
+
+    static final class Cos extends Unary {
+        void apply(double[] a, int n) { TinyGP.kernels.cos(a, n); }
+    }
+}
@@ -0,0 +1,5 @@
+package pl.edu.agh;
+
+interface CompiledProgram {  // out[i] = program(cols[0][from + i], ..., cols[varnumber - 1][from + i]) for i < n
+    void eval(double[][] cols, double[] out, int from, int n);
+}
@@ -0,0 +1,91 @@
+package pl.edu.agh;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.util.Properties;
+
+// settings of a run, read once when TinyGP is initialized: from the properties file named by -Dtinygp.config
+// (or those TinyGPServer configures before), each overridden by a -Dtinygp.<name> system property,
+// the defaults for those missing from both
+final class Config {
+    static Properties settings = load();
+
+    private Config() {
+    }
+
+    static Properties load() {
+        Properties settings = new Properties();
+        String path = System.getProperty("tinygp.config");
+        if (path != null) {
+            try (Reader in = new InputStreamReader(new FileInputStream(path), StandardCharsets.UTF_8)) {
+                settings.load(in);
+            } catch (IOException e) {
+                System.err.println("ERROR: Cannot read settings file " + path + ": " + e.getMessage());
+                System.exit(1);
+            }
+        }
+        return settings;
+    }
+
+    static void configure(Properties job) {  // before TinyGP is initialized
+        settings = job;
+    }
+
+    static String string(String name, String otherwise) {
+        String value = System.getProperty("tinygp." + name, settings.getProperty(name));
+        return value == null ? otherwise : value.trim();
+    }
+
+    // a bad number fails the static initializer of TinyGP, the message says which setting it was
+    static int integer(String name, int otherwise) {
+        String value = string(name, null);
+        try {
+            return value == null ? otherwise : Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Setting " + name + "=" + value + " is not an integer", e);
+        }
+    }
+
+    static double real(String name, double otherwise) {
+        String value = string(name, null);
+        try {
+            return value == null ? otherwise : Double.parseDouble(value);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Setting " + name + "=" + value + " is not a number", e);
+        }
+    }
+
+    static boolean flag(String name, boolean otherwise) {
+        String value = string(name, null);
+        return value == null ? otherwise : Boolean.parseBoolean(value);
+    }
+
+    // the caller's token of every operation, ADD..COS by default
+    static int external(int operation) {
+        return integer(TinyGP.OPERATION_NAMES[operation - TinyGP.FSET_START], operation);
+    }
+
+    // enabled operations from first to last: those whose caller's token is at most its FSET_END, as the caller
+    // numbers the enabled ones first
+    static char[] operations(int first, int last) {
+        int end = integer("FSET_END", TinyGP.FSET_END);
+        StringBuilder enabled = new StringBuilder();
+        for (int operation = first; operation <= last; operation++)
+            if (external(operation) <= end)
+                enabled.append((char) operation);
+        return enabled.toString().toCharArray();
+    }
+
+    // the caller's token of every token, variables and constants are the same
+    static int[] tokens() {
+        int[] tokens = new int[TinyGP.FSET_END + 1];
+        for (int token = 0; token < TinyGP.FSET_START; token++)
+            tokens[token] = token;
+        for (int operation = TinyGP.FSET_START; operation <= TinyGP.FSET_END; operation++)
+            tokens[operation] = external(operation);
+        return tokens;
+    }
+}
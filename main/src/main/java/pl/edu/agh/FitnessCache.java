@@ -0,0 +1,103 @@
+package pl.edu.agh;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.LongAdder;
+
+// Fitness of recently evaluated programs, keyed by a 128-bit hash of the simplified program.
+// Lock-striped segments of 8-way sets; a full set evicts with CLOCK (second chance) over its ways.
+final class FitnessCache {
+    static final int SEGMENTS = 64, WAYS = 8;
+
+    final Segment[] segments = new Segment[SEGMENTS];
+    final int set_mask;
+    final LongAdder hits = new LongAdder(), misses = new LongAdder();
+
+    static final class Segment {
+        final long[] keys1, keys2;
+        final double[] values;
+        final boolean[] used, referenced;
+        final byte[] hands;  // CLOCK hand of every set
+
+        Segment(int sets) {
+            keys1 = new long[sets * WAYS];
+            keys2 = new long[sets * WAYS];
+            values = new double[sets * WAYS];
+            used = new boolean[sets * WAYS];
+            referenced = new boolean[sets * WAYS];
+            hands = new byte[sets];
+        }
+    }
+
+    FitnessCache(int capacity) {
+        int sets = Integer.highestOneBit(Math.max(1, capacity / (SEGMENTS * WAYS)));
+        set_mask = sets - 1;
+        for (int i = 0; i < SEGMENTS; i++)
+            segments[i] = new Segment(sets);
+    }
+
+    void reset() {  // for the next run of a warm engine
+        for (Segment segment : segments) {
+            synchronized (segment) {
+                Arrays.fill(segment.used, false);
+                Arrays.fill(segment.referenced, false);
+                Arrays.fill(segment.hands, (byte) 0);
+            }
+        }
+        hits.reset();
+        misses.reset();
+    }
+
+    static void hash(TinyGP.EvaluationContext ctx) {
+        long h1 = 0x9E3779B97F4A7C15L, h2 = 0xC2B2AE3D27D4EB4FL;
+        for (int i = 0; i < ctx.length; i++) {
+            int primitive = ctx.operations[i];
+            long v = primitive == 0 ? Double.doubleToLongBits(ctx.numbers[i]) : primitive;
+            v = TinyGP.mix_seed(v + primitive);
+            h1 = Long.rotateLeft(h1 ^ v, 31) * 0x9E3779B97F4A7C15L;
+            h2 = Long.rotateLeft(h2 + v, 27) * 0xFF51AFD7ED558CCDL + i;
+        }
+        ctx.hash1 = TinyGP.mix_seed(h1 ^ ctx.length);
+        ctx.hash2 = TinyGP.mix_seed(h2);
+    }
+
+    boolean get(TinyGP.EvaluationContext ctx) {
+        Segment segment = segments[(int) (ctx.hash1 >>> 58)];
+        int base = (int) (ctx.hash1 & set_mask) * WAYS;
+        synchronized (segment) {
+            for (int i = base; i < base + WAYS; i++) {
+                if (segment.used[i] && segment.keys1[i] == ctx.hash1 && segment.keys2[i] == ctx.hash2) {
+                    segment.referenced[i] = true;
+                    ctx.cached = segment.values[i];
+                    hits.increment();
+                    return true;
+                }
+            }
+        }
+        misses.increment();
+        return false;
+    }
+
+    void put(TinyGP.EvaluationContext ctx, double fitness) {
+        Segment segment = segments[(int) (ctx.hash1 >>> 58)];
+        int set = (int) (ctx.hash1 & set_mask), base = set * WAYS;
+        synchronized (segment) {
+            int victim = -1;
+            for (int i = base; i < base + WAYS && victim < 0; i++)
+                if (!segment.used[i] || (segment.keys1[i] == ctx.hash1 && segment.keys2[i] == ctx.hash2))
+                    victim = i;
+            while (victim < 0) {  // second chance: clear reference bits until an unreferenced way comes up
+                int i = base + segment.hands[set];
+                segment.hands[set] = (byte) ((segment.hands[set] + 1) % WAYS);
+                if (segment.referenced[i])
+                    segment.referenced[i] = false;
+                else
+                    victim = i;
+            }
+            segment.used[victim] = true;
+            segment.referenced[victim] = false;
+            segment.keys1[victim] = ctx.hash1;
+            segment.keys2[victim] = ctx.hash2;
+            segment.values[victim] = fitness;
+        }
+    }
+}
@@ -0,0 +1,57 @@
+package pl.edu.agh;
+
+class Hist {
+    public int gen;
+    public double avg_fitness;
+    public double best_fitness;
+    public double avg_size;
+    public char[] best_individual;
+
+    public Hist(int gen, double avg_fitness, double best_fitness, double avg_size, char[] best_individual) {
+        this.gen = gen;
+        this.avg_fitness = avg_fitness;
+        this.best_fitness = best_fitness;
+        this.avg_size = avg_size;
+        this.best_individual = new char[best_individual.length];
+        System.arraycopy(best_individual, 0, this.best_individual, 0, best_individual.length);
+    }
+
+    public char[] getBest_individual() {
+        return best_individual;
+    }
+
+    public double getAvg_size() {
+        return avg_size;
+    }
+
+    public double getBest_fitness() {
+        return best_fitness;
+    }
+
+    public double getAvg_fitness() {
+        return avg_fitness;
+    }
+
+    public int getGen() {
+        return gen;
+    }
+
+    @Override
+    public String toString() {
+        return gen + " " +
+                avg_fitness + " " +
+                best_fitness + " " +
+                avg_size + " " +
+                tokens(new StringBuilder(), best_individual, ' ');
+    }
+
+    // the tokens of the program as the caller numbers them, separated by separator
+    static StringBuilder tokens(StringBuilder out, char[] program, char separator) {
+        for (int i = 0; i < program.length; i++) {
+            if (i > 0)
+                out.append(separator);
+            out.append(TinyGP.EXTERNAL[program[i]]);
+        }
+        return out;
+    }
+}
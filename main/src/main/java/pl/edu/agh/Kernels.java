@@ -0,0 +1,12 @@
+package pl.edu.agh;
+
+interface Kernels {  // b is the second argument and receives the result, a is overwritten by 1 argument functions
+    void add(double[] a, double[] b, int n);
+    void sub(double[] a, double[] b, int n);
+    void mul(double[] a, double[] b, int n);
+    void div(double[] a, double[] b, int n);
+    void exp(double[] a, int n);
+    void sin(double[] a, int n);
+    void cos(double[] a, int n);
+    double error(double[] results, double[] expected, int from, int n);  // summed over n cases
+}
@@ -0,0 +1,5 @@
+package pl.edu.agh;
+
+abstract class Node {  // out[i] = value of the subtree for fitness case from + i, slots are scratch blocks
+    abstract void eval(double[][] slots, int from, int n, double[] out);
+}
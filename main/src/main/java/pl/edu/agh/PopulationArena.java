@@ -0,0 +1,148 @@
+package pl.edu.agh;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.CharBuffer;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+
+// Programs of a population in off-heap chunks, one (address, length) record per slot. Writers bump-allocate
+// in chunks of their own; replaced programs stay where they are until compact() copies the live ones into
+// other chunks between generations, so nothing a reader may still be copying from is reused mid-generation.
+final class PopulationArena {
+    static final int CHUNK = Math.max(1 << 20, TinyGP.MAX_LEN);  // chars, a program never spans chunks
+    static final VarHandle ADDRESS = MethodHandles.arrayElementVarHandle(long[].class);
+    static final VarHandle LENGTH = MethodHandles.arrayElementVarHandle(int[].class);
+
+    final long[] addresses;  // chunk << 32 | offset
+    final int[] lengths;
+    volatile CharBuffer[] chunks = new CharBuffer[0];  // replaced under this when a chunk is added
+    final ArrayDeque<Integer> free = new ArrayDeque<>();  // chunks without live programs, guarded by this
+
+    PopulationArena(int slots) {
+        addresses = new long[slots];
+        lengths = new int[slots];
+    }
+
+    final class Allocator {  // one per worker and generation
+        int chunk, top, limit;
+
+        long put(char[] program, int length) {
+            if (top + length > limit) {
+                chunk = claim(length);
+                top = 0;
+                limit = chunks[chunk].capacity();
+            }
+            chunks[chunk].put(top, program, 0, length);
+            long address = (long) chunk << 32 | top;
+            top += length;
+            return address;
+        }
+    }
+
+    Allocator allocator() {
+        return new Allocator();
+    }
+
+    synchronized int claim(int length) {
+        if (length <= CHUNK && !free.isEmpty())
+            return free.pop();
+        CharBuffer chunk = ByteBuffer.allocateDirect(2 * Math.max(CHUNK, length))
+                .order(ByteOrder.nativeOrder()).asCharBuffer();
+        CharBuffer[] grown = Arrays.copyOf(chunks, chunks.length + 1);
+        grown[chunks.length] = chunk;
+        chunks = grown;
+        return chunks.length - 1;
+    }
+
+    void set(int slot, long address, int length) {
+        ADDRESS.setOpaque(addresses, slot, address);
+        LENGTH.setOpaque(lengths, slot, length);
+    }
+
+    /**
+     * Copies the program in slot into parent k of ctx.
+     * @return false if the record was torn by a concurrent write_slot, the caller's stamp check fails then too
+     */
+    boolean load(int slot, int k, TinyGP.EvaluationContext ctx) {
+        long address = (long) ADDRESS.getOpaque(addresses, slot);
+        int length = (int) LENGTH.getOpaque(lengths, slot);
+        CharBuffer[] chunks = this.chunks;
+        int chunk = (int) (address >>> 32), offset = (int) address;
+        if (chunk >= chunks.length || length < 0 || (long) offset + length > chunks[chunk].capacity())
+            return false;
+        if (ctx.parents[k].length < length)
+            ctx.parents[k] = new char[Math.max(length, 2 * ctx.parents[k].length)];
+        chunks[chunk].get(offset, ctx.parents[k], 0, length);
+        ctx.parent_lengths[k] = length;
+        return true;
+    }
+
+    int length(int slot) {
+        return lengths[slot];
+    }
+
+    long hash(int slot) {  // as TinyGP.program_hash, without copying the program out
+        CharBuffer chunk = chunks[(int) (addresses[slot] >>> 32)];
+        int offset = (int) addresses[slot], length = lengths[slot];
+        long h = length;
+        for (int i = 0; i < length; i++)
+            h = Long.rotateLeft((h ^ chunk.get(offset + i)) * 0x9E3779B97F4A7C15L, 27);
+        return TinyGP.mix_seed(h);
+    }
+
+    char[] program(int slot) {
+        char[] program = new char[lengths[slot]];
+        chunks[(int) (addresses[slot] >>> 32)].get((int) addresses[slot], program, 0, program.length);
+        return program;
+    }
+
+    long live() {  // chars of the programs in the slots
+        long live = 0;
+        for (int length : lengths)
+            live += length;
+        return live;
+    }
+
+    long capacity() {  // chars of all chunks, the off-heap memory held
+        long capacity = 0;
+        for (CharBuffer chunk : chunks)
+            capacity += chunk.capacity();
+        return capacity;
+    }
+
+    // moves the live programs into as few chunks as possible once more than half of the used space is dead,
+    // only between generations
+    synchronized void compact() {
+        boolean[] unused = new boolean[chunks.length];
+        for (int chunk : free)
+            unused[chunk] = true;
+        long used = 0;
+        for (int chunk = 0; chunk < unused.length; chunk++)
+            if (!unused[chunk])
+                used += chunks[chunk].capacity();
+        if (used <= 2 * live() + CHUNK)
+            return;
+
+        Allocator allocator = new Allocator();
+        char[] buffer = new char[CHUNK];
+        for (int slot = 0; slot < lengths.length; slot++) {
+            int length = lengths[slot];
+            if (buffer.length < length)
+                buffer = new char[length];
+            chunks[(int) (addresses[slot] >>> 32)].get((int) addresses[slot], buffer, 0, length);
+            set(slot, allocator.put(buffer, length), length);
+        }
+        for (int chunk = 0; chunk < unused.length; chunk++)  // chunks claimed above were free before
+            if (!unused[chunk])
+                free.push(chunk);
+    }
+
+    synchronized void clear() {  // every slot is going to be set again
+        free.clear();
+        for (int chunk = 0; chunk < chunks.length; chunk++)
+            free.push(chunk);
+    }
+}
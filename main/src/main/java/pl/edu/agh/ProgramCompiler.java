@@ -0,0 +1,399 @@
+package pl.edu.agh;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.invoke.MethodHandles;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+
+// Turns simplified programs into hidden classes with a straight-line loop body, so the JIT
+// sees the whole expression instead of the interpreter switch.
+final class ProgramCompiler {
+    static final MethodHandles.Lookup LOOKUP = MethodHandles.lookup();
+    static final int MAX_CODE = 8000;  // HotSpot doesn't JIT methods above 8000 bytes of bytecode
+    static final int HOT_BITS = 16;  // hotness counters, one per slot of the program hash
+    static final long COUNT_MASK = 0xFFFF;  // a counter: the low bits of the slot, the rest is a tag of the program
+
+    // lock-free, keyed by the 128-bit program hash of FitnessCache.hash: a program whose tag differs from the
+    // slot's takes the slot over, and a compiled program replaces the one mapped to the same slot
+    static final AtomicLongArray evaluations = new AtomicLongArray(1 << HOT_BITS);
+    static final AtomicReferenceArray<Compiled> compiled = new AtomicReferenceArray<>(TinyGP.COMPILED_CACHE_SIZE);
+    static final LongAdder compilations = new LongAdder();
+
+    record Compiled(long hash1, long hash2, CompiledProgram program) {}
+
+    static void reset() {  // for the next run of a warm engine, whose programs start cold again
+        for (int i = 0; i < evaluations.length(); i++)
+            evaluations.set(i, 0);
+        for (int i = 0; i < compiled.length(); i++)
+            compiled.set(i, null);
+        compilations.reset();
+    }
+
+    // called by the interpreter for protected operations, small enough to be inlined
+    static double div(double num, double den) {
+        return Math.abs(den) <= TinyGP.DIVISION_CUT_OUT ? num : num / den;
+    }
+
+    static double exp(double num) {
+        return num <= TinyGP.EXPONENT_CUT_OUT ? Math.exp(num) : num;
+    }
+
+    static double sin(double num) {
+        return Math.sin(Math.toRadians(num));
+    }
+
+    static double cos(double num) {
+        return Math.cos(Math.toRadians(num));
+    }
+
+    /**
+     * Counts one more use of the simplified program in ctx, hashed by FitnessCache.hash: an evaluation, or a hit
+     * of the fitness cache, so a program the cache keeps serving is compiled by the time it's evaluated again.
+     * @return the uses counted so far, saturated at COUNT_MASK
+     */
+    static int count(TinyGP.EvaluationContext ctx) {
+        int i = (int) (ctx.hash1 >>> (64 - HOT_BITS));
+        long tag = ctx.hash2 & ~COUNT_MASK;
+        while (true) {
+            long slot = evaluations.get(i);
+            long next = (slot & ~COUNT_MASK) != tag ? tag | 1 : (slot & COUNT_MASK) == COUNT_MASK ? slot : slot + 1;
+            if (evaluations.compareAndSet(i, slot, next))
+                return (int) (next & COUNT_MASK);
+        }
+    }
+
+    /**
+     * Counts an evaluation of the simplified program in ctx and compiles it once it gets hot.
+     * @return the compiled program or null while the program is still interpreted
+     */
+    static CompiledProgram hot(TinyGP.EvaluationContext ctx) {
+        if (TinyGP.FITNESS_CACHE_SIZE == 0)
+            FitnessCache.hash(ctx);  // else fitness_function already did
+        int i = (int) (ctx.hash1 & (TinyGP.COMPILED_CACHE_SIZE - 1));
+        Compiled entry = compiled.get(i);
+        if (entry != null && entry.hash1 == ctx.hash1 && entry.hash2 == ctx.hash2)
+            return entry.program;  // null for a program too long to compile, not tried again
+        if (count(ctx) < Math.min(TinyGP.COMPILE_THRESHOLD, COUNT_MASK))
+            return null;
+        CompiledProgram program = compile(ctx);  // workers getting here at once for a program each compile it
+        compiled.set(i, new Compiled(ctx.hash1, ctx.hash2, program));
+        if (program != null)
+            compilations.increment();
+        return program;
+    }
+
+    /**
+     * @return the program as an instance of a new hidden class, or null if it's too long to be JIT compiled
+     */
+    static CompiledProgram compile(TinyGP.EvaluationContext ctx) {
+        byte[] bytes = new ClassBuilder(ctx).build();
+        if (bytes == null)
+            return null;
+        try {
+            // not STRONG, the class is unloaded once the cache drops the instance
+            Class<?> type = LOOKUP.defineHiddenClass(bytes, true).lookupClass();
+            return (CompiledProgram) type.getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("Cannot define compiled program", e);
+        }
+    }
+
+    // minimal class file writer: one constructor and the eval loop, no branches inside the expression
+    static final class ClassBuilder {
+        static final String PACKAGE = "pl/edu/agh/";  // of the lookup, which the hidden class joins
+        static final String NAME = PACKAGE + "CompiledProgram$Impl";
+        static final int
+                ALOAD_0 = 0x2a, ALOAD_1 = 0x2b, ALOAD_2 = 0x2c, ILOAD_3 = 0x1d, ICONST_0 = 0x03,
+                BIPUSH = 0x10, SIPUSH = 0x11, LDC2_W = 0x14, ILOAD = 0x15, ALOAD = 0x19, ISTORE = 0x36, ASTORE = 0x3a,
+                AALOAD = 0x32, DALOAD = 0x31, DASTORE = 0x52, IADD = 0x60,
+                DADD = 0x63, DSUB = 0x67, DMUL = 0x6b,
+                IINC = 0x84, IF_ICMPGE = 0xa2, GOTO = 0xa7, RETURN = 0xb1,
+                INVOKESPECIAL = 0xb7, INVOKESTATIC = 0xb8;
+        static final int I = 5, COLUMNS = 6;  // locals: this, cols, out, from, n, i, one column per variable
+
+        final TinyGP.EvaluationContext ctx;
+        final ByteArrayOutputStream pool = new ByteArrayOutputStream();
+        final DataOutputStream cp = new DataOutputStream(pool);
+        final Map<Object, Integer> entries = new HashMap<>();
+        int poolSize = 1;
+        final ByteArrayOutputStream code = new ByteArrayOutputStream();
+        final int[] column;  // local holding the column of each variable, 0 if unused
+        int stack, maxStack;
+
+        ClassBuilder(TinyGP.EvaluationContext ctx) {
+            this.ctx = ctx;
+            this.column = new int[TinyGP.varnumber];
+        }
+
+        byte[] build() {
+            try {
+                int locals = COLUMNS;
+                for (int pc = 0; pc < ctx.length; pc++) {
+                    int primitive = ctx.operations[pc];
+                    if (primitive > 0 && primitive < TinyGP.FSET_START && column[primitive - 1] == 0)
+                        column[primitive - 1] = locals++;
+                }
+                if (ctx.length * 8 > MAX_CODE)
+                    return null;
+
+                // prologue: hoist the used columns into locals, i = 0
+                for (int v = 0; v < column.length; v++) {
+                    if (column[v] == 0)
+                        continue;
+                    code.write(ALOAD_1);
+                    push_int(v);
+                    code.write(AALOAD);
+                    code.write(ASTORE);
+                    code.write(column[v]);
+                }
+                code.write(ICONST_0);
+                code.write(ISTORE);
+                code.write(I);
+                maxStack = 2;
+
+                // loop: while (i < n) { out[i] = expr; i++; }
+                int loop = code.size();
+                code.write(ILOAD);
+                code.write(I);
+                code.write(ILOAD);
+                code.write(4);
+                int exit_jump = code.size();
+                code.write(IF_ICMPGE);
+                u2(code, 0);  // patched below
+                code.write(ALOAD_2);
+                code.write(ILOAD);
+                code.write(I);
+                stack = 2;
+                if (expression(0) != ctx.length)
+                    throw new IllegalStateException("Malformed program");
+                code.write(DASTORE);
+                code.write(IINC);
+                code.write(I);
+                code.write(1);
+                int back_jump = code.size();
+                code.write(GOTO);
+                u2(code, loop - back_jump);
+                int exit = code.size();
+                code.write(RETURN);
+                if (code.size() > MAX_CODE)
+                    return null;
+                byte[] body = code.toByteArray();
+                body[exit_jump + 1] = (byte) ((exit - exit_jump) >> 8);
+                body[exit_jump + 2] = (byte) (exit - exit_jump);
+
+                return assemble(body, locals, loop, exit);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        // emits the subtree starting at pc, leaving its value on the stack; returns the end of the subtree
+        int expression(int pc) throws IOException {
+            int primitive = ctx.operations[pc];
+            if (primitive == 0) {
+                code.write(LDC2_W);
+                u2(code, constant(ctx.numbers[pc]));
+                grow(2);
+                return pc + 1;
+            }
+            if (primitive < TinyGP.FSET_START) {  // cols[v][from + i]
+                code.write(ALOAD);
+                code.write(column[primitive - 1]);
+                code.write(ILOAD_3);
+                code.write(ILOAD);
+                code.write(I);
+                grow(3);
+                code.write(IADD);
+                code.write(DALOAD);
+                stack -= 1;
+                return pc + 1;
+            }
+            int end = expression(pc + 1);
+            if (primitive <= TinyGP.FSET_2ARG_END)
+                end = expression(end);
+            switch (primitive) {
+                case TinyGP.ADD -> code.write(DADD);
+                case TinyGP.SUB -> code.write(DSUB);
+                case TinyGP.MUL -> code.write(DMUL);
+                case TinyGP.DIV -> invoke("div", "(DD)D");
+                case TinyGP.EXP -> invoke("exp", "(D)D");
+                case TinyGP.SIN -> invoke("sin", "(D)D");
+                case TinyGP.COS -> invoke("cos", "(D)D");
+                default -> throw new IllegalStateException("Unknown op: " + primitive);
+            }
+            if (primitive <= TinyGP.FSET_2ARG_END)
+                stack -= 2;
+            return end;
+        }
+
+        void invoke(String name, String descriptor) throws IOException {
+            code.write(INVOKESTATIC);
+            u2(code, member(10, PACKAGE + "ProgramCompiler", name, descriptor));
+        }
+
+        void push_int(int value) throws IOException {
+            if (value < 128) {
+                code.write(BIPUSH);
+                code.write(value);
+            } else {
+                code.write(SIPUSH);
+                u2(code, value);
+            }
+        }
+
+        void grow(int words) {
+            stack += words;
+            maxStack = Math.max(maxStack, stack);
+        }
+
+        byte[] assemble(byte[] body, int locals, int loop, int exit) throws IOException {
+            int this_class = type(NAME);
+            int super_class = type("java/lang/Object");
+            int interface_class = type(PACKAGE + "CompiledProgram");
+            int object_init = member(10, "java/lang/Object", "<init>", "()V");
+            int init = utf8("<init>"), init_type = utf8("()V");
+            int eval = utf8("eval"), eval_type = utf8("([[D[DII)V");
+            int code_attr = utf8("Code"), frames_attr = utf8("StackMapTable");
+            int matrix = type("[[D"), array = type("[D");
+
+            // frame at the loop head, the exit has the same locals
+            ByteArrayOutputStream frames = new ByteArrayOutputStream();
+            DataOutputStream f = new DataOutputStream(frames);
+            f.writeShort(2);
+            f.writeByte(255);  // full_frame
+            f.writeShort(loop);
+            f.writeShort(locals);
+            f.writeByte(7); f.writeShort(this_class);
+            f.writeByte(7); f.writeShort(matrix);
+            f.writeByte(7); f.writeShort(array);
+            f.writeByte(1); f.writeByte(1); f.writeByte(1);  // from, n, i
+            for (int l = COLUMNS; l < locals; l++) {
+                f.writeByte(7);
+                f.writeShort(array);
+            }
+            f.writeShort(0);
+            f.writeByte(251);  // same_frame_extended
+            f.writeShort(exit - loop - 1);
+
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            DataOutputStream d = new DataOutputStream(out);
+            d.writeInt(0xCAFEBABE);
+            d.writeShort(0);
+            d.writeShort(61);
+            d.writeShort(poolSize);
+            d.write(pool.toByteArray());
+            d.writeShort(0x0001 | 0x0010 | 0x0020);  // public final super
+            d.writeShort(this_class);
+            d.writeShort(super_class);
+            d.writeShort(1);
+            d.writeShort(interface_class);
+            d.writeShort(0);  // fields
+            d.writeShort(2);  // methods
+
+            d.writeShort(0x0001);
+            d.writeShort(init);
+            d.writeShort(init_type);
+            d.writeShort(1);
+            d.writeShort(code_attr);
+            d.writeInt(12 + 5);
+            d.writeShort(1);
+            d.writeShort(1);
+            d.writeInt(5);
+            d.writeByte(ALOAD_0);
+            d.writeByte(INVOKESPECIAL);
+            d.writeShort(object_init);
+            d.writeByte(RETURN);
+            d.writeShort(0);
+            d.writeShort(0);
+
+            d.writeShort(0x0001);
+            d.writeShort(eval);
+            d.writeShort(eval_type);
+            d.writeShort(1);
+            d.writeShort(code_attr);
+            d.writeInt(12 + body.length + 6 + frames.size());
+            d.writeShort(maxStack);
+            d.writeShort(locals);
+            d.writeInt(body.length);
+            d.write(body);
+            d.writeShort(0);  // exception table
+            d.writeShort(1);
+            d.writeShort(frames_attr);
+            d.writeInt(frames.size());
+            d.write(frames.toByteArray());
+
+            d.writeShort(0);  // class attributes
+            return out.toByteArray();
+        }
+
+        int utf8(String value) throws IOException {
+            Integer index = entries.get(value);
+            if (index == null) {
+                cp.writeByte(1);
+                cp.writeUTF(value);
+                index = add(value, 1);
+            }
+            return index;
+        }
+
+        int type(String name) throws IOException {
+            Object key = List.of("class", name);
+            Integer index = entries.get(key);
+            if (index == null) {
+                int utf = utf8(name);
+                cp.writeByte(7);
+                cp.writeShort(utf);
+                index = add(key, 1);
+            }
+            return index;
+        }
+
+        int member(int tag, String owner, String name, String descriptor) throws IOException {
+            Object key = List.of(owner, name, descriptor);
+            Integer index = entries.get(key);
+            if (index == null) {
+                int owner_index = type(owner);
+                int name_index = utf8(name), type_index = utf8(descriptor);
+                cp.writeByte(12);
+                cp.writeShort(name_index);
+                cp.writeShort(type_index);
+                int name_and_type = add(List.of(name, descriptor), 1);
+                cp.writeByte(tag);
+                cp.writeShort(owner_index);
+                cp.writeShort(name_and_type);
+                index = add(key, 1);
+            }
+            return index;
+        }
+
+        int constant(double value) throws IOException {
+            Object key = Double.doubleToRawLongBits(value);
+            Integer index = entries.get(key);
+            if (index == null) {
+                cp.writeByte(6);
+                cp.writeDouble(value);
+                index = add(key, 2);  // doubles take two constant pool slots
+            }
+            return index;
+        }
+
+        int add(Object key, int slots) {
+            int index = poolSize;
+            poolSize += slots;
+            entries.put(key, index);
+            return index;
+        }
+
+        static void u2(ByteArrayOutputStream out, int value) {
+            out.write(value >> 8);
+            out.write(value);
+        }
+    }
+}
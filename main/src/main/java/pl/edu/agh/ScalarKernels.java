@@ -0,0 +1,43 @@
+package pl.edu.agh;
+
+class ScalarKernels implements Kernels {
+    public void add(double[] a, double[] b, int n) {
+        for (int i = 0; i < n; i++) b[i] = a[i] + b[i];
+    }
+
+    public void sub(double[] a, double[] b, int n) {
+        for (int i = 0; i < n; i++) b[i] = a[i] - b[i];
+    }
+
+    public void mul(double[] a, double[] b, int n) {
+        for (int i = 0; i < n; i++) b[i] = a[i] * b[i];
+    }
+
+    public void div(double[] a, double[] b, int n) {
+        for (int i = 0; i < n; i++)
+            b[i] = Math.abs(b[i]) <= TinyGP.DIVISION_CUT_OUT ? a[i] : a[i] / b[i];
+    }
+
+    public void exp(double[] a, int n) {
+        for (int i = 0; i < n; i++)
+            a[i] = a[i] <= TinyGP.EXPONENT_CUT_OUT ? Math.exp(a[i]) : a[i];
+    }
+
+    public void sin(double[] a, int n) {
+        for (int i = 0; i < n; i++) a[i] = Math.sin(Math.toRadians(a[i]));
+    }
+
+    public void cos(double[] a, int n) {
+        for (int i = 0; i < n; i++) a[i] = Math.cos(Math.toRadians(a[i]));
+    }
+
+    public double error(double[] results, double[] expected, int from, int n) {
+        double result, actual, fit = 0.0;
+        for (int i = 0; i < n; i++) {
+            result = results[i];
+            actual = expected[from + i];
+            fit += TinyGP.error(result, actual);
+        }
+        return fit;
+    }
+}
@@ -0,0 +1,99 @@
+package pl.edu.agh;
+
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+// Batch evaluator kernels on the Vector API.
+// Loaded by TinyGP.select_kernels with SIMD set, only when the JVM runs with --add-modules jdk.incubator.vector.
+class SimdKernels implements Kernels {
+    static final VectorSpecies<Double> SPECIES = DoubleVector.SPECIES_PREFERRED;
+    static final int LANES = SPECIES.length();
+    static final double DEGREES_TO_RADIANS = Math.PI / 180.0;
+
+    public void add(double[] a, double[] b, int n) {
+        int i = 0;
+        for (int bound = SPECIES.loopBound(n); i < bound; i += LANES) {
+            DoubleVector va = DoubleVector.fromArray(SPECIES, a, i);
+            va.add(DoubleVector.fromArray(SPECIES, b, i)).intoArray(b, i);
+        }
+        for (; i < n; i++) b[i] = a[i] + b[i];
+    }
+
+    public void sub(double[] a, double[] b, int n) {
+        int i = 0;
+        for (int bound = SPECIES.loopBound(n); i < bound; i += LANES) {
+            DoubleVector va = DoubleVector.fromArray(SPECIES, a, i);
+            va.sub(DoubleVector.fromArray(SPECIES, b, i)).intoArray(b, i);
+        }
+        for (; i < n; i++) b[i] = a[i] - b[i];
+    }
+
+    public void mul(double[] a, double[] b, int n) {
+        int i = 0;
+        for (int bound = SPECIES.loopBound(n); i < bound; i += LANES) {
+            DoubleVector va = DoubleVector.fromArray(SPECIES, a, i);
+            va.mul(DoubleVector.fromArray(SPECIES, b, i)).intoArray(b, i);
+        }
+        for (; i < n; i++) b[i] = a[i] * b[i];
+    }
+
+    public void div(double[] a, double[] b, int n) {
+        int i = 0;
+        for (int bound = SPECIES.loopBound(n); i < bound; i += LANES) {
+            DoubleVector va = DoubleVector.fromArray(SPECIES, a, i);
+            DoubleVector vb = DoubleVector.fromArray(SPECIES, b, i);
+            // protected division: keep the numerator where the denominator is too small
+            VectorMask<Double> cut = vb.abs().compare(VectorOperators.LE, TinyGP.DIVISION_CUT_OUT);
+            va.div(vb).blend(va, cut).intoArray(b, i);
+        }
+        for (; i < n; i++)
+            b[i] = Math.abs(b[i]) <= TinyGP.DIVISION_CUT_OUT ? a[i] : a[i] / b[i];
+    }
+
+    public void exp(double[] a, int n) {
+        int i = 0;
+        for (int bound = SPECIES.loopBound(n); i < bound; i += LANES) {
+            DoubleVector va = DoubleVector.fromArray(SPECIES, a, i);
+            VectorMask<Double> in = va.compare(VectorOperators.LE, TinyGP.EXPONENT_CUT_OUT);
+            va.blend(va.lanewise(VectorOperators.EXP), in).intoArray(a, i);
+        }
+        for (; i < n; i++)
+            a[i] = a[i] <= TinyGP.EXPONENT_CUT_OUT ? Math.exp(a[i]) : a[i];
+    }
+
+    public void sin(double[] a, int n) {
+        int i = 0;
+        for (int bound = SPECIES.loopBound(n); i < bound; i += LANES) {
+            DoubleVector va = DoubleVector.fromArray(SPECIES, a, i);
+            va.mul(DEGREES_TO_RADIANS).lanewise(VectorOperators.SIN).intoArray(a, i);
+        }
+        for (; i < n; i++) a[i] = Math.sin(Math.toRadians(a[i]));
+    }
+
+    public void cos(double[] a, int n) {
+        int i = 0;
+        for (int bound = SPECIES.loopBound(n); i < bound; i += LANES) {
+            DoubleVector va = DoubleVector.fromArray(SPECIES, a, i);
+            va.mul(DEGREES_TO_RADIANS).lanewise(VectorOperators.COS).intoArray(a, i);
+        }
+        for (; i < n; i++) a[i] = Math.cos(Math.toRadians(a[i]));
+    }
+
+    public double error(double[] results, double[] expected, int from, int n) {
+        DoubleVector sum = DoubleVector.zero(SPECIES);
+        int i = 0;
+        for (int bound = SPECIES.loopBound(n); i < bound; i += LANES) {
+            DoubleVector diff = DoubleVector.fromArray(SPECIES, results, i)
+                    .sub(DoubleVector.fromArray(SPECIES, expected, from + i));
+            sum = TinyGP.METRIC == TinyGP.METRIC_MSE ? diff.fma(diff, sum) : sum.add(diff.abs());
+        }
+        double fit = sum.reduceLanes(VectorOperators.ADD);
+        for (; i < n; i++) {
+            double diff = results[i] - expected[from + i];
+            fit += TinyGP.METRIC == TinyGP.METRIC_MSE ? diff * diff : Math.abs(diff);
+        }
+        return fit;
+    }
+}
@@ -0,0 +1,146 @@
+package pl.edu.agh;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+// Output vectors of frequent subtrees over all fitness cases, keyed by a 128-bit structural hash of the
+// simplified subtree. A subtree is admitted once a count-min sketch has seen it often enough for its size,
+// so big subtrees get in sooner; entries past the byte budget are evicted with CLOCK (second chance).
+final class SubtreeCache {
+    static final int MIN_SIZE = 3, ADMISSION_SCORE = 64;  // admitted when sightings * size >= ADMISSION_SCORE
+    static final int SKETCH_ROWS = 4, SKETCH_BITS = 16;
+    static final long ENTRY_OVERHEAD = 96;  // entry, key, map node and array header
+
+    record Key(long hash1, long hash2) {}
+
+    static final class Entry {
+        final Key key;
+        final double[] values;
+        final long bytes;
+        volatile boolean referenced;
+
+        Entry(Key key, double[] values) {
+            this.key = key;
+            this.values = values;
+            this.bytes = 8L * values.length + ENTRY_OVERHEAD;
+        }
+    }
+
+    final long budget;
+    final ConcurrentHashMap<Key, Entry> entries = new ConcurrentHashMap<>();
+    final ArrayDeque<Entry> clock = new ArrayDeque<>();  // guarded by this
+    volatile long bytes;  // written under this
+    final int[] sketch = new int[SKETCH_ROWS << SKETCH_BITS];  // racy increments, the counts are estimates anyway
+    final LongAdder hits = new LongAdder(), saved = new LongAdder();
+
+    SubtreeCache(long budget) {
+        this.budget = budget;
+    }
+
+    // hash and size of the subtree starting at every position, children are hashed before their parents
+    static void hash(TinyGP.EvaluationContext ctx) {
+        if (ctx.subtree_size.length < ctx.length) {
+            int capacity = Math.max(ctx.length, TinyGP.MAX_LEN);
+            ctx.subtree_hash1 = new long[capacity];
+            ctx.subtree_hash2 = new long[capacity];
+            ctx.subtree_size = new int[capacity];
+        }
+        long[] hash1 = ctx.subtree_hash1, hash2 = ctx.subtree_hash2;
+        int[] size = ctx.subtree_size;
+        for (int i = ctx.length - 1; i >= 0; i--) {
+            int primitive = ctx.operations[i];
+            if (primitive < TinyGP.FSET_START) {
+                long v = primitive == 0 ? Double.doubleToLongBits(ctx.numbers[i]) : primitive;
+                hash1[i] = TinyGP.mix_seed(v + primitive);
+                hash2[i] = TinyGP.mix_seed(v ^ 0xC2B2AE3D27D4EB4FL) + primitive;
+                size[i] = 1;
+                continue;
+            }
+            int a = i + 1;
+            long h1 = primitive * 0x9E3779B97F4A7C15L ^ hash1[a];
+            long h2 = primitive + hash2[a] * 0xFF51AFD7ED558CCDL;
+            int n = 1 + size[a];
+            if (primitive <= TinyGP.FSET_2ARG_END) {
+                int b = a + size[a];
+                h1 = Long.rotateLeft(h1, 29) * 0xC2B2AE3D27D4EB4FL ^ hash1[b];
+                h2 = h2 * 0x9E3779B97F4A7C15L + Long.rotateLeft(hash2[b], 17);
+                n += size[b];
+            }
+            hash1[i] = TinyGP.mix_seed(h1);
+            hash2[i] = TinyGP.mix_seed(h2);
+            size[i] = n;
+        }
+    }
+
+    /**
+     * Counts one more sighting of the subtree.
+     * @return the estimated number of sightings since the counts were last aged
+     */
+    int count(long hash1, long hash2) {
+        int min = Integer.MAX_VALUE;
+        for (int row = 0; row < SKETCH_ROWS; row++) {
+            int i = (row << SKETCH_BITS) + (int) ((hash1 + row * hash2) >>> (64 - SKETCH_BITS));
+            min = Math.min(min, ++sketch[i]);
+        }
+        return min;
+    }
+
+    boolean admits(int seen, int size) {
+        return (long) seen * size >= ADMISSION_SCORE && 8L * TinyGP.fitnesscases + ENTRY_OVERHEAD <= budget;
+    }
+
+    double[] get(long hash1, long hash2, int size) {
+        Entry entry = entries.get(new Key(hash1, hash2));
+        if (entry == null)
+            return null;
+        if (!entry.referenced)
+            entry.referenced = true;
+        hits.increment();
+        saved.add((long) size * TinyGP.fitnesscases);
+        return entry.values;
+    }
+
+    synchronized void admit(List<ClosureCompiler.Recorder> recorders) {
+        for (ClosureCompiler.Recorder recorder : recorders) {
+            if (entries.containsKey(recorder.key))
+                continue;
+            Entry entry = new Entry(recorder.key, recorder.values);
+            while (bytes + entry.bytes > budget) {
+                Entry victim = clock.pollFirst();
+                if (victim.referenced) {
+                    victim.referenced = false;
+                    clock.addLast(victim);
+                } else {
+                    entries.remove(victim.key);
+                    bytes -= victim.bytes;
+                }
+            }
+            entries.put(entry.key, entry);
+            clock.addLast(entry);
+            bytes += entry.bytes;
+        }
+        recorders.clear();
+    }
+
+    synchronized void clear() {
+        entries.clear();
+        clock.clear();
+        bytes = 0;
+    }
+
+    void reset() {  // for the next run of a warm engine
+        clear();
+        Arrays.fill(sketch, 0);
+        hits.reset();
+        saved.reset();
+    }
+
+    // halves the sightings every generation, so subtrees that left the population stop being admitted
+    void age() {
+        for (int i = 0; i < sketch.length; i++)
+            sketch[i] >>>= 1;
+    }
+}
@@ -0,0 +1,196 @@
+package pl.edu.agh;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+// Converts fitness cases to the binary column format TinyGP.load_binary maps: from the text rows of a .dat file
+// (with or without the header line of tiny_gp.java, told apart by its layout) or from the targets of a
+// gps/*.json file. Text is read twice, once to count the rows and once to parse them straight into the mapped
+// columns, a window of each at a time, so the converter holds a row and handles text files larger than its heap
+// and columns past 2 GB. TinyGP still copies the fitness cases it uses to the heap.
+//
+// java -cp main/target/classes pl.edu.agh.TargetsConverter <input .dat or .json> <output> [float32]
+public class TargetsConverter {
+    interface Rows {
+        void forEach(RowConsumer consumer) throws IOException;
+    }
+
+    interface RowConsumer {
+        void accept(long row, double[] values) throws IOException;
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2 || (args.length > 2 && !args[2].equals("float32"))) {
+            System.err.println("usage: TargetsConverter <input .dat or .json> <output> [float32]");
+            System.exit(2);
+        }
+        int width = args.length > 2 ? Float.BYTES : Double.BYTES;
+        Path input = Path.of(args[0]), output = Path.of(args[1]);
+        long[] shape = args[0].endsWith(".json") ? convert_json(input, output, width) : convert_text(input, output, width);
+        System.out.println("Wrote " + shape[0] + " fitness cases of " + shape[1] + " variables to " + output);
+    }
+
+    static long[] convert_text(Path input, Path output, int width) throws IOException {
+        String[] first = null;
+        boolean header = false;  // until the second line tells the number of variables
+        int columns = 0, lines = 0;
+        long rows = 0;
+        try (BufferedReader in = Files.newBufferedReader(input, StandardCharsets.UTF_8)) {
+            for (String line = in.readLine(); line != null; line = in.readLine()) {
+                lines++;
+                int count = count_values(line);
+                if (count == 0)
+                    continue;
+                if (first == null) {
+                    first = line.trim().split("\\s+");
+                    header = first.length == 5 && is_integer(first[0]) && is_integer(first[1]) && is_integer(first[4]);
+                    if (!header) {
+                        columns = count;
+                        rows++;
+                    }
+                    continue;
+                }
+                if (header && columns == 0) {
+                    header = Long.parseLong(first[0]) == count - 1;  // varnumber, or a fitness case of integers
+                    columns = header ? count : first.length;
+                    rows = header ? 0 : 1;
+                }
+                if (count != columns)
+                    throw new IOException((count < columns ? "Not enough" : "Too many") + " values in line " + lines);
+                rows++;
+            }
+        }
+        if (rows == 0)
+            throw new IOException("No fitness cases in " + input);
+        int skip = header ? 1 : 0, per_row = columns;
+        write(output, rows, columns - 1, width, consumer -> {
+            try (BufferedReader in = Files.newBufferedReader(input, StandardCharsets.UTF_8)) {
+                double[] values = new double[per_row];
+                long row = -skip;
+                for (String line = in.readLine(); line != null; line = in.readLine()) {
+                    if (count_values(line) == 0)
+                        continue;
+                    if (row >= 0) {
+                        parse(line, values);
+                        consumer.accept(row, values);
+                    }
+                    row++;
+                }
+            }
+        });
+        return new long[]{rows, columns - 1};
+    }
+
+    // of the header of tiny_gp.java: varnumber randomnumber minrandom maxrandom fitnesscases, told apart from a
+    // fitness case of as many values by varnumber, that of the rows after it
+    static boolean is_integer(String value) {
+        try {
+            return Long.parseLong(value) >= 0;
+        } catch (NumberFormatException e) {
+            return false;
+        }
+    }
+
+    // the targets array of a TinyGP.to_json file, small enough to hold
+    static long[] convert_json(Path input, Path output, int width) throws IOException {
+        String json = Files.readString(input, StandardCharsets.UTF_8);
+        int at = json.indexOf("\"targets\"");
+        if (at < 0)
+            throw new IOException("No targets in " + input);
+        at = json.indexOf('[', at) + 1;
+        List<double[]> rows = new ArrayList<>();
+        while (true) {
+            int start = json.indexOf('[', at), end = json.indexOf(']', at);
+            if (start < 0 || end < start)  // the ] closing targets
+                break;
+            end = json.indexOf(']', start);
+            String[] values = json.substring(start + 1, end).split(",");
+            double[] row = new double[values.length];
+            for (int j = 0; j < values.length; j++)
+                row[j] = Double.parseDouble(values[j].trim());
+            rows.add(row);
+            at = end + 1;
+        }
+        if (rows.isEmpty())
+            throw new IOException("No fitness cases in " + input);
+        int columns = rows.get(0).length;
+        write(output, rows.size(), columns - 1, width, consumer -> {
+            for (int i = 0; i < rows.size(); i++)
+                consumer.accept(i, rows.get(i));
+        });
+        return new long[]{rows.size(), columns - 1};
+    }
+
+    static void write(Path output, long rows, int vars, int width, Rows source) throws IOException {
+        write(output, rows, vars, width, source, TinyGP.CASES_WINDOW);
+    }
+
+    // the rows come in order, so each column keeps one window of window bytes mapped and moves it on when full
+    static void write(Path output, long rows, int vars, int width, Rows source, long window) throws IOException {
+        try (FileChannel channel = FileChannel.open(output, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer header = ByteBuffer.allocate(TinyGP.CASES_HEADER).order(ByteOrder.LITTLE_ENDIAN);
+            header.put(TinyGP.CASES_MAGIC.getBytes(StandardCharsets.US_ASCII)).putInt(TinyGP.CASES_VERSION).putInt(width).putLong(rows).putInt(vars).putInt(0);
+            channel.write(header.flip(), 0);
+            MappedByteBuffer[] columns = new MappedByteBuffer[vars + 1];
+            long[] starts = new long[vars + 1];  // first row of each column's window
+            long per_window = window / width;
+            source.forEach((row, values) -> {
+                for (int j = 0; j <= vars; j++) {
+                    if (columns[j] == null || row < starts[j] || row >= starts[j] + per_window) {
+                        if (columns[j] != null)
+                            columns[j].force();
+                        starts[j] = row - row % per_window;
+                        long size = Math.min(per_window, rows - starts[j]) * width;
+                        columns[j] = channel.map(FileChannel.MapMode.READ_WRITE,
+                                TinyGP.CASES_HEADER + (j * rows + starts[j]) * width, size);
+                        columns[j].order(ByteOrder.LITTLE_ENDIAN);
+                    }
+                    int at = (int) (row - starts[j]) * width;
+                    if (width == Double.BYTES)
+                        columns[j].putDouble(at, values[j]);
+                    else
+                        columns[j].putFloat(at, (float) values[j]);
+                }
+            });
+            for (MappedByteBuffer column : columns)
+                if (column != null)
+                    column.force();
+        }
+    }
+
+    static int count_values(String line) {
+        int count = 0;
+        boolean inside = false;
+        for (int i = 0; i < line.length(); i++) {
+            boolean space = Character.isWhitespace(line.charAt(i));
+            if (!space && !inside)
+                count++;
+            inside = !space;
+        }
+        return count;
+    }
+
+    static void parse(String line, double[] values) {
+        int j = 0, start = -1;
+        for (int i = 0; i <= line.length() && j < values.length; i++) {
+            boolean space = i == line.length() || Character.isWhitespace(line.charAt(i));
+            if (space && start >= 0) {
+                values[j++] = Double.parseDouble(line.substring(start, i));
+                start = -1;
+            } else if (!space && start < 0) {
+                start = i;
+            }
+        }
+    }
+}
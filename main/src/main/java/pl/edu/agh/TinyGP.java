@@ -0,0 +1,2180 @@
+package pl.edu.agh;
+
+import java.io.BufferedReader;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintStream;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.text.DecimalFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.SplittableRandom;
+import java.util.StringTokenizer;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.random.RandomGenerator;
+
+public class TinyGP {
+    // operations, always these tokens; which ones programs are made of is configured, as are the tokens
+    // the caller numbers them with (see Config.operations)
+    public static final int
+            ADD = 110,
+            SUB = 111,
+            MUL = 112,
+            DIV = 113,
+            EXP = 114,
+            SIN = 115,
+            COS = 116,
+            FSET_START = ADD,
+            FSET_2ARG_END = DIV,  //last 2 argument function, start of 1 argument functions
+            FSET_END = COS;  // last operation
+    static final String[] OPERATION_NAMES = {"ADD", "SUB", "MUL", "DIV", "EXP", "SIN", "COS"};
+    static final char[] FUNCTIONS = Config.operations(FSET_START, FSET_END),  // enabled ones
+            BINARY = Config.operations(FSET_START, FSET_2ARG_END),
+            UNARY = Config.operations(FSET_2ARG_END + 1, FSET_END);
+    static final int[] EXTERNAL = Config.tokens();  // what the caller calls every token
+
+    // settings
+    public static final double
+            DIVISION_CUT_OUT = Config.real("DIVISION_CUT_OUT", 0.001),
+            EXPONENT_CUT_OUT = Config.real("EXPONENT_CUT_OUT", 100.0);
+
+    // parameter variables
+    public static final int
+            MAX_LEN = Config.integer("MAX_LEN", 10000),
+            POPSIZE = Config.integer("POPSIZE", 100000),
+            DEPTH   = Config.integer("DEPTH", 5),
+            GENERATIONS = Config.integer("GENERATIONS", 30),
+            TSIZE = Config.integer("TSIZE", 2);
+    public static final double
+            minrandom = Config.real("minrandom", -5.0),
+            maxrandom = Config.real("maxrandom", 5.0),
+            goal_fitness = Config.real("goal_fitness", 1e-5);
+    public static final int
+            varnumber = Config.integer("varnumber", 1),
+            fitnesscases = Config.integer("fitnesscases", 101),
+            randomnumber = Config.integer("randomnumber", 100);
+    public static final double
+            PMUT_PER_NODE  = Config.real("PMUT_PER_NODE", 0.05),
+            CROSSOVER_PROB = Config.real("CROSSOVER_PROB", 0.9);
+
+    // evaluators
+    public static final int
+            EVAL_STACK = 0,  // one interpreter pass per fitness case
+            EVAL_BATCH = 1,  // one interpreter pass per block of fitness cases
+            EVAL_CLOSURE = 2,  // program compiled to a tree of nodes, one tree walk per block of fitness cases
+            EVALUATOR = Config.integer("EVALUATOR", 1),
+            BATCH_SIZE = 512;  // fitness cases per block, keeps the value stack in cache
+
+    // error metrics
+    public static final int
+            METRIC_MAE = 0,
+            METRIC_MSE = 1,
+            METRIC = Config.integer("METRIC", 0);
+    // random streams of the workers
+    public static final int
+            RNG_PER_WORKER = 0,  // one stream per worker and generation, reproducible for a fixed thread count
+            RNG_PER_INDIVIDUAL = 1,  // one stream per offspring slot and generation, reproducible for any thread count
+            RNG_STREAMS = Config.integer("RNG_STREAMS", 0);
+
+    // replacement schemes
+    public static final int
+            STEADY_STATE = 0,  // offspring replace the loser of a negative tournament within the worker's stripe right away
+            GENERATIONAL = 1,  // offspring fill the next generation, swapped in at the generation barrier
+            REPLACEMENT = Config.integer("REPLACEMENT", 0);
+
+    // statistics
+    public static final boolean
+            PRINT_BEST = Config.flag("PRINT_BEST", true);  // print the best program as an expression every generation
+    public static final int
+            OUTPUT_TEXT = 0,  // TOKEN, the constants and a line per generation, once the run is over
+            OUTPUT_NDJSON = 1,  // a JSON line of the constants, then one per generation as soon as stats computes it
+            OUTPUT = Config.integer("OUTPUT", 0);
+
+    // initial population
+    public static final int
+            INIT_GROW = 0,  // terminals may end any branch before the depth is reached
+            INIT_FULL = 1,  // every branch has the full depth
+            INIT_RAMPED = 2,  // ramped half-and-half, depths ramped over MIN_DEPTH..DEPTH, every other one full
+            INIT_METHOD = Config.integer("INIT_METHOD", 0),
+            MIN_DEPTH = Config.integer("MIN_DEPTH", 2),  // shallowest programs of the ramp
+            INIT_ATTEMPTS = 16;  // draws of a duplicate before it's kept anyway, small depths have few programs
+    public static final boolean
+            INIT_UNIQUE = Config.flag("INIT_UNIQUE", false);  // redraw initial programs equal to one drawn already
+
+    // bloat control
+    public static final int
+            MAX_NODES = Config.integer("MAX_NODES", 0),  // longest offspring crossover may produce, 0 disables
+            MAX_DEPTH = Config.integer("MAX_DEPTH", 0),  // deepest offspring crossover may produce (functions on a path), 0 disables
+            CROSSOVER_ATTEMPTS = 8,  // point pairs tried before the first parent is copied instead
+            NO_PARSIMONY = 0,
+            DOUBLE_TOURNAMENT = 1,  // size tournament between two fitness tournament winners (or losers)
+            TARPEIAN = 2,  // longer than average offspring are killed before being evaluated
+            PARSIMONY = Config.integer("PARSIMONY", 0);
+    public static final double
+            PARSIMONY_PRESSURE = Config.real("PARSIMONY_PRESSURE", 0.7);  // chance the size tournament or the kill happens
+
+    public static final boolean
+            SIMD = Config.flag("SIMD", true);  // use the Vector API kernels in the batch evaluator when they are available
+
+    // bytecode compilation of hot programs
+    public static final int
+            COMPILE_THRESHOLD = Config.integer("COMPILE_THRESHOLD", 0),  // evaluations of the same program before it's compiled, 0 disables
+            COMPILED_CACHE_SIZE = 1024;  // compiled programs kept alive (a power of two), evicted ones can be unloaded
+
+    // program rewriting before evaluation
+    public static final boolean
+            ALGEBRAIC_SIMPLIFICATION = Config.flag("ALGEBRAIC_SIMPLIFICATION", false),  // identity, annihilator and reassociation rules, canonical operand order; changes rounding
+            COMMON_SUBEXPRESSIONS = Config.flag("COMMON_SUBEXPRESSIONS", false),  // stack and batch evaluators evaluate repeated subtrees once
+            SUPERINSTRUCTIONS = Config.flag("SUPERINSTRUCTIONS", false);  // fused opcodes in the stack evaluator, Math.fma rounds once and needs hardware FMA to be fast
+    static final int SHARED = Character.MAX_VALUE;  // token of a repeated subtree in the DAG, loads its memo
+    // superinstructions of the stack evaluator, c is a constant and v a variable, both in the token
+    static final int
+            FMA = SHARED - 6,  // ADD(MUL(a, b), c)
+            FMA_SWAPPED = SHARED - 5,  // ADD(c, MUL(a, b))
+            MUL_CV = SHARED - 4,  // MUL(c, v) or MUL(v, c)
+            FMA_CV = SHARED - 3,  // ADD(MUL_CV, y) or ADD(y, MUL_CV)
+            SIN_CV = SHARED - 2,  // SIN(MUL_CV)
+            COS_CV = SHARED - 1;  // COS(MUL_CV)
+    static final String[] SUPERINSTRUCTION_NAMES = {"FMA", "FMA_SWAPPED", "MUL_CV", "FMA_CV", "SIN_CV", "COS_CV"};
+
+    // fitness memoization
+    public static final int
+            FITNESS_CACHE_SIZE = Config.integer("FITNESS_CACHE_SIZE", 65536);  // simplified programs remembered, 0 disables
+
+    // population storage
+    public static final boolean
+            POPULATION_ARENA = Config.flag("POPULATION_ARENA", false);  // programs in off-heap chunks instead of one array each
+
+    // subtree output vectors, used by the closure evaluator
+    public static final int
+            SUBTREE_CACHE_MB = Config.integer("SUBTREE_CACHE_MB", 0);  // memory budget of the subtree cache, 0 disables
+
+    // early abort of programs that can't survive selection
+    public static final double
+            REJECTION_PERCENTILE = Config.real("REJECTION_PERCENTILE", 0.0),  // error percentile of the population past which evaluation stops, 0 disables
+            REJECTED = -1.0e30;  // fitness of rejected programs, still above the -1.0e34 tournaments start from
+    public static final boolean
+            CASE_ORDERING = Config.flag("CASE_ORDERING", false);  // evaluate the cases the population gets most wrong first
+    static final int
+            EVAL_BLOCK = REJECTION_PERCENTILE > 0 ? 32 : BATCH_SIZE,  // fitness cases between rejection checks
+            ORDERING_SAMPLE = 32;  // programs whose errors order the cases
+
+    static final byte[] ARITY = arity_table();  // arguments of every token, 0 for variables and constants
+    static final int INDEX_CACHE = 64;  // parents whose subtree ends a worker remembers, a power of 2
+
+    // population variables
+    static double [] fitness;
+    static char [][] population;
+    static double [] next_fitness;  // generational replacement only
+    static char [][] next_population;
+    static double fbestpop = 0.0, favgpop = 0.0;
+    static int best_index;  // best individual of the last stats
+    static final int STATS_BLOCK = 4096;  // individuals per partial result of stats
+    static int [] block_best, block_rejected;
+    static double [] block_fitness, block_sum;
+    static long [] block_nodes;
+    static long [] program_hashes;  // of every individual, sorted within each block to count the distinct ones
+    static int [][] merge_cursors;  // per worker: the heap, position and end of every block in its range of hashes
+    static final StringBuilder expression = new StringBuilder();  // the best program, rendered when printed
+    static final StringBuilder record = new StringBuilder();  // a line of OUTPUT_NDJSON
+    static PopulationArena arena, next_arena;  // instead of population and next_population with POPULATION_ARENA
+
+    // steady-state slots: each worker only replaces slots of its own stripe, readers check the slot's stamp
+    // (odd while its owner is writing) to get a consistent program and fitness without locking
+    static long [] stamps;
+    static final VarHandle STAMP = MethodHandles.arrayElementVarHandle(long[].class);
+    static final VarHandle PROGRAM = MethodHandles.arrayElementVarHandle(char[][].class);
+    static final VarHandle FITNESS = MethodHandles.arrayElementVarHandle(double[].class);
+
+    // helper variables
+    static PrintStream console = System.out;  // output of the run, the server points it at its client
+    static long seed = Config.integer("seed", -1);
+    static Random rd = new Random();  // setup, initial population and stats, all on the main thread
+    static SplittableRandom streams;  // source of the worker streams, split on the main thread
+    static long individual_seed;
+    static double [] x = new double[FSET_START];
+    static double avg_len;
+    public static double[][] targets;  // rows, for the stack evaluator only
+    public static double[][] columns;  // column-major targets, columns[varnumber] holds the expected results
+
+    public static String file = Config.string("file", "targets.dat");  // text rows, or binary columns (see CASES_MAGIC)
+    // binary fitness cases: a 32 byte little-endian header (magic, version, bytes per value, rows, variables), then
+    // the columns one after the other, expected results last, written by TargetsConverter or by fit (NumPy tofile)
+    static final String CASES_MAGIC = "TGPCASES";
+    static final int CASES_VERSION = 1, CASES_HEADER = 32;
+    static final long CASES_WINDOW = 1 << 26;  // bytes of a column mapped at a time, columns may pass 2 GB
+
+    // cache variables
+    static double[] numbers;
+    static char[] operations;
+    static int PC;
+    static double[] variables;
+    static int length;
+
+    // executors
+    static final int NUM_THREADS = Integer.getInteger("tinygp.threads", Runtime.getRuntime().availableProcessors());
+    static final ExecutorService executor = Executors.newFixedThreadPool(NUM_THREADS, task -> {
+        Thread worker = new Thread(task);
+        worker.setDaemon(true);  // kept between runs of a warm engine, never holding the JVM up
+        return worker;
+    });
+
+    // a round of tasks on the workers: the main thread waits for all of them, then rethrows the first failure,
+    // so a worker that throws can't leave it waiting for good
+    static final class Round {
+        final CountDownLatch latch;
+        final AtomicReference<Throwable> failure = new AtomicReference<>();
+
+        Round(int tasks) {
+            latch = new CountDownLatch(tasks);
+        }
+
+        void submit(Runnable task) {
+            executor.execute(() -> {
+                try {
+                    task.run();
+                } catch (Throwable e) {
+                    failure.compareAndSet(null, e);
+                } finally {
+                    latch.countDown();
+                }
+            });
+        }
+
+        void await(String phase) {
+            try {
+                latch.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                System.err.println(phase + " interrupted: " + e.getMessage());
+            }
+            Throwable e = failure.get();
+            if (e instanceof RuntimeException exception)
+                throw exception;
+            if (e instanceof Error error)
+                throw error;
+            if (e != null)
+                throw new IllegalStateException(e);
+        }
+    }
+
+    // element-wise operations of the batch evaluator
+    static final Kernels kernels = select_kernels();
+
+    static final FitnessCache fitness_cache = FITNESS_CACHE_SIZE > 0 ? new FitnessCache(FITNESS_CACHE_SIZE) : null;
+
+    // error past which evaluation stops, set by stats
+    static volatile double rejection_threshold = Double.POSITIVE_INFINITY;
+    static double[] rejection_errors = new double[0];  // scratch of rejection_threshold
+    static final LongAdder killed = new LongAdder();  // Tarpeian victims
+    static final LongAdder nodes_read = new LongAdder(), nodes_kept = new LongAdder();  // by simplify
+    static final LongAdder dag_nodes = new LongAdder(), dag_unique = new LongAdder();  // by share
+    static final LongAdder[] superinstructions = new LongAdder[SUPERINSTRUCTION_NAMES.length];  // by fuse, per pattern
+    static final LongAdder instructions = new LongAdder();
+    static {
+        for (int i = 0; i < superinstructions.length; i++)
+            superinstructions[i] = new LongAdder();
+    }
+    static final LongAdder cases_total = new LongAdder(), cases_skipped = new LongAdder(), rejected = new LongAdder();
+    static final LongAdder redrawn = new LongAdder();  // duplicates of the initial population
+
+    static final SubtreeCache subtree_cache = SUBTREE_CACHE_MB > 0 && EVALUATOR == EVAL_CLOSURE
+            ? new SubtreeCache(SUBTREE_CACHE_MB * (1L << 20)) : null;
+
+    // per-worker scratch of the evaluation, sized for MAX_LEN and grown only by longer programs,
+    // so evaluating allocates nothing once a worker is warm
+    static class EvaluationContext {
+        int length;
+        double[] numbers = new double[MAX_LEN];  // only valid where operations are 0
+        char[] operations = new char[MAX_LEN];
+        double[] variables;
+        double[] stack = new double[MAX_LEN];  // value stack of the stack evaluator
+        char[] rewritten = new char[MAX_LEN];  // scratch of rewrite, the program in reverse
+        double[] rewritten_numbers = new double[MAX_LEN];
+        int[] starts = new int[MAX_LEN];
+        // the program as a DAG, set by share, grown like the subtree hashes it's built from
+        boolean shared;  // the DAG is of the current program, reset by simplify
+        int dag_length, memos, unique;
+        char[] dag_operations = new char[0];
+        double[] dag_numbers = new double[0];
+        int[] memo_of = new int[0];  // memo a SHARED token loads, or the one a repeated subtree's root stores, else -1
+        int[] memo_at = new int[0], original = new int[0], dag_table = new int[0];  // scratch of share
+        double[] memo = new double[0];  // of the stack evaluator
+        double[][] memo_vectors = new double[0][];  // of the batch evaluator
+        // the program run by the stack evaluator, with superinstructions, set by fuse
+        boolean fused;  // reset by simplify
+        int fused_length;
+        char[] fused_operations = new char[0];
+        double[] fused_numbers = new double[0];
+        int[] fused_variables = new int[0];  // of the superinstructions with a variable
+        int[] fused_memo = new int[0];  // as memo_of
+
+        void reserve_dag(int len) {
+            if (dag_operations.length < len) {
+                int capacity = Math.max(len, MAX_LEN);
+                dag_operations = new char[capacity];
+                dag_numbers = new double[capacity];
+                memo_of = new int[capacity];
+                memo_at = new int[capacity];
+                original = new int[capacity];
+            }
+            if (dag_table.length < Integer.highestOneBit(len) << 2)
+                dag_table = new int[Integer.highestOneBit(Math.max(len, MAX_LEN)) << 2];
+        }
+
+        void reserve_fused(int len) {
+            if (fused_operations.length < len) {
+                int capacity = Math.max(len, MAX_LEN);
+                fused_operations = new char[capacity];
+                fused_numbers = new double[capacity];
+                fused_variables = new int[capacity];
+                fused_memo = new int[capacity];
+            }
+            if (starts.length < len)
+                starts = new int[len];
+        }
+        double[][] slots = new double[0][];  // value stack of the batch evaluator, one block per slot
+        double[] results = new double[BATCH_SIZE];  // output block of compiled programs
+        long hash1, hash2;  // 128-bit hash of the simplified program, set by FitnessCache.hash
+        double cached;  // fitness found by FitnessCache.get
+        long[] subtree_hash1 = new long[0], subtree_hash2 = new long[0];  // set by SubtreeCache.hash
+        int[] subtree_size = new int[0];
+        final ArrayList<ClosureCompiler.Recorder> recorders = new ArrayList<>();  // subtrees to admit once evaluated
+        ClosureCompiler closures;  // its nodes are reused by the next program the closure evaluator compiles
+        // parents of the next offspring, arrays of the population or copies out of the arena
+        char[][] parents = {new char[MAX_LEN], new char[MAX_LEN]};
+        int[] parent_lengths = new int[2];
+        long winner_stamp;  // of the slot stamped_best_of picked
+        char[] offspring = new char[2 * MAX_LEN];
+
+        // subtree ends of recently used parents, keyed by the identity of their arrays in the population
+        final char[][] indexed = new char[INDEX_CACHE][];
+        final int[][] index = new int[INDEX_CACHE][];
+        final int[][] parent_ends = {new int[MAX_LEN], new int[MAX_LEN]};  // when the cache can't keep them
+
+        int[] depths = new int[0];  // scratch of tree_depth
+
+        int[] depths(int capacity) {
+            if (MAX_DEPTH > 0 && depths.length < capacity)
+                depths = new int[Math.max(capacity, 2 * depths.length)];
+            return depths;
+        }
+
+        char[] offspring(int capacity) {  // grown, never shrunk
+            if (offspring.length < capacity)
+                offspring = new char[Math.max(capacity, 2 * offspring.length)];
+            return offspring;
+        }
+
+        int[] subtree_ends(int k) {  // of parent k, computed once per program while it stays in the cache
+            char[] program = parents[k];
+            int length = parent_lengths[k];
+            int i = System.identityHashCode(program) & (INDEX_CACHE - 1);
+            // copies out of the arena are in reused buffers, and the other parent's entry must survive
+            if (POPULATION_ARENA || (indexed[i] != program && indexed[i] == parents[1 - k])) {
+                if (parent_ends[k].length < length)
+                    parent_ends[k] = new int[Math.max(length, 2 * parent_ends[k].length)];
+                TinyGP.subtree_ends(program, length, parent_ends[k]);
+                return parent_ends[k];
+            }
+            if (indexed[i] != program) {
+                if (index[i] == null || index[i].length < length)
+                    index[i] = new int[length];
+                TinyGP.subtree_ends(program, length, index[i]);
+                indexed[i] = program;
+            }
+            return index[i];
+        }
+    }
+
+    static void loadTargets() {
+        try {
+            if (is_binary(file))
+                load_binary(CASES_WINDOW);
+            else
+                load_text();
+        }
+        catch (FileNotFoundException | NoSuchFileException e) {
+            throw new IllegalArgumentException("Data file not found: " + file);
+        }
+        catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid number format in data file");
+        }
+        catch (IOException e) {
+            throw new IllegalArgumentException(e.getMessage());
+        }
+        targets = null;
+        if (EVALUATOR == EVAL_BATCH || EVALUATOR == EVAL_CLOSURE)  // they read the columns
+            return;
+        targets = new double[fitnesscases][varnumber + 1];  // rows of the stack evaluator
+        for (int i = 0; i < fitnesscases; i++) {
+            for (int j = 0; j <= varnumber; j++) {
+                targets[i][j] = columns[j][i];
+            }
+        }
+    }
+
+    static boolean is_binary(String file) throws IOException {
+        try (InputStream in = new FileInputStream(file)) {
+            byte[] magic = CASES_MAGIC.getBytes(StandardCharsets.US_ASCII);
+            return Arrays.equals(in.readNBytes(magic.length), magic);
+        }
+    }
+
+    static void load_text() throws IOException {
+        try (BufferedReader in = new BufferedReader(new FileReader(file))) {
+            columns = new double[varnumber + 1][fitnesscases];
+            String line;
+            for (int i = 0; i < fitnesscases; i++) {
+                line = in.readLine();
+                if (line == null) {
+                    throw new IOException("Unexpected end of file at line " + (i + 2));
+                }
+
+                StringTokenizer tokens = new StringTokenizer(line);
+
+                for (int j = 0; j <= varnumber; j++) {
+                    if (!tokens.hasMoreTokens()) {
+                        throw new IOException("Not enough values in line " + (i + 2));
+                    }
+                    columns[j][i] = Double.parseDouble(tokens.nextToken().trim());
+                }
+            }
+        }
+    }
+
+    // maps the columns of the file window bytes at a time, doubles are bulk copied out of the mapping, nothing is
+    // parsed; the fitnesscases used are copied to the heap, as load_text reads them
+    static void load_binary(long window) throws IOException {
+        try (FileChannel channel = FileChannel.open(Path.of(file), StandardOpenOption.READ)) {
+            if (channel.size() < CASES_HEADER)
+                throw new IOException("Data file is truncated");
+            ByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, CASES_HEADER).order(ByteOrder.LITTLE_ENDIAN);
+            int version = header.getInt(8), width = header.getInt(12), vars = header.getInt(24);
+            long rows = header.getLong(16);
+            if (version != CASES_VERSION || (width != Double.BYTES && width != Float.BYTES))
+                throw new IOException("Unsupported data file version " + version + " with " + width + " byte values");
+            if (vars != varnumber)
+                throw new IOException("Data file has " + vars + " variables, varnumber is " + varnumber);
+            if (rows < fitnesscases)
+                throw new IOException("Data file has " + rows + " fitness cases, fitnesscases is " + fitnesscases);
+            if (channel.size() < CASES_HEADER + (vars + 1) * rows * width)
+                throw new IOException("Data file is truncated");
+            columns = new double[varnumber + 1][fitnesscases];
+            for (int j = 0; j <= varnumber; j++) {
+                for (int from = 0, n; from < fitnesscases; from += n) {  // a window of the column at a time
+                    n = (int) Math.min(fitnesscases - from, window / width);
+                    ByteBuffer values = channel.map(FileChannel.MapMode.READ_ONLY,
+                            CASES_HEADER + j * rows * width + (long) from * width, (long) n * width).order(ByteOrder.LITTLE_ENDIAN);
+                    if (width == Double.BYTES) {
+                        values.asDoubleBuffer().get(columns[j], from, n);
+                    } else {
+                        FloatBuffer floats = values.asFloatBuffer();
+                        for (int i = 0; i < n; i++)
+                            columns[j][from + i] = floats.get(i);
+                    }
+                }
+            }
+        }
+    }
+
+    static Kernels select_kernels() {
+        if (SIMD) {
+            try {
+                // only links when the JVM runs with --add-modules jdk.incubator.vector
+                return (Kernels) Class.forName("pl.edu.agh.SimdKernels").getDeclaredConstructor().newInstance();
+            } catch (ReflectiveOperationException | LinkageError e) {
+                console.println("SIMD kernels not available, using scalar kernels");
+            }
+        }
+        return new ScalarKernels();
+    }
+
+    static void simplify(char[] prog, EvaluationContext ctx) {
+        simplify(prog, prog.length, ctx);
+    }
+
+    static void simplify(char[] prog, int len, EvaluationContext ctx) {
+        // simplify the individual
+        // evaluate operations between constants
+        // put operations and evaluation result into separate arrays (operations and numbers)
+        // 0 in operations means it's a number
+        // ADD, SUB, MUL, DIV - operations
+        // FSET_END + 1 + var_id - it's a variable
+        int ptr = 0;
+        if (ctx.operations.length < len) {  // offspring can outgrow MAX_LEN
+            ctx.operations = new char[len];
+            ctx.numbers = new double[len];
+        }
+        Arrays.fill(ctx.operations, 0, len, '\0');
+        for (int i = 0; i < len; i++) {
+            char primitive = prog[i];
+            if (primitive < varnumber) {  // it's the variable
+                // variables start from 1 to differentiate them operations
+                ctx.operations[ptr++] = ++primitive; // add that 1
+            } else if (primitive < FSET_START) {  // it's a number
+                ctx.numbers[ptr] = x[primitive];
+                while (ptr > 1) {
+                    // for 2 argument functions
+                    if (ctx.operations[ptr - 2] >= FSET_START  // before must be an operation
+                            && ctx.operations[ptr - 2] <= FSET_2ARG_END // before must be an 2 argument operation (skip variables)
+                            && ctx.operations[ptr - 1] == 0) {  // number is following the operation
+                        int opp = ctx.operations[ptr - 2];
+                        ctx.operations[ptr - 2] = 0;
+                        double result = fold(opp, ctx.numbers[ptr - 1], ctx.numbers[ptr]);
+                        ptr -= 2;
+                        ctx.numbers[ptr] = result;
+                        // for 1 argument functions
+                    } else if (ctx.operations[ptr - 1] > FSET_2ARG_END  // before must be a 1 argument operation
+                            && ctx.operations[ptr - 1] <= FSET_END) {  // before must be an 1 argument operation (skip variables)
+                        int opp = ctx.operations[ptr - 1];
+                        ctx.operations[ptr - 1] = 0;
+                        double result = fold(opp, ctx.numbers[ptr], 0.0);
+                        ptr -= 1;
+                        ctx.numbers[ptr] = result;
+                    } else {
+                        break;
+                    }
+                }
+                ptr++;
+            } else {  // it's an operation
+                ctx.operations[ptr++] = primitive;
+            }
+        }
+        ctx.length = ptr;
+        ctx.shared = false;
+        ctx.fused = false;
+        if (ALGEBRAIC_SIMPLIFICATION) {
+            rewrite(ctx);
+            nodes_read.add(len);
+            nodes_kept.add(ctx.length);
+        }
+    }
+
+    static double error(double result, double actual) {  // of one fitness case, summed over the cases
+        double error = result - actual;
+        return METRIC == METRIC_MSE ? error * error : Math.abs(error);
+    }
+
+    static double fold(int opp, double num1, double num2) {  // value of an operation on constants, as run computes it
+        return switch (opp) {
+            case ADD -> num1 + num2;
+            case SUB -> num1 - num2;
+            case MUL -> num1 * num2;
+            case DIV -> Math.abs(num2) <= DIVISION_CUT_OUT ? num1 : num1 / num2;
+            case EXP -> num1 <= EXPONENT_CUT_OUT ? Math.exp(num1) : num1;
+            case SIN -> Math.sin(Math.toRadians(num1));
+            case COS -> Math.cos(Math.toRadians(num1));
+            default -> throw new IllegalArgumentException();
+        };
+    }
+
+    // rewrites the folded program in ctx bottom-up: identities (x+0, x-0, x*1, x/1) and annihilators (x*0, 0/x, x-x)
+    // are removed, constants are merged across chains of the same operation ((x+c1)+c2 is x+(c1+c2)), and the operands
+    // of ADD and MUL are put in canonical order, so programs equal up to these rules evaluate and hash the same.
+    // The rules hold for finite values, a subtree overflowing to infinity in x*0 or x-x gets a finite result.
+    // x/x isn't rewritten, the protected division returns x instead of 1 around 0.
+    // The program is rebuilt in reverse prefix order in ctx.rewritten, where the operands of a node end right where
+    // the node is appended, so every rule only moves the tail of the buffer
+    static void rewrite(EvaluationContext ctx) {
+        int len = ctx.length;
+        if (ctx.rewritten.length < len) {
+            ctx.rewritten = new char[len];
+            ctx.rewritten_numbers = new double[len];
+            ctx.starts = new int[len];
+        }
+        char[] ops = ctx.rewritten;
+        double[] nums = ctx.rewritten_numbers;
+        int[] starts = ctx.starts;  // where the subtrees on the value stack start in the buffer
+        int top = 0, end = 0;
+        for (int pc = len - 1; pc >= 0; pc--) {
+            char primitive = ctx.operations[pc];
+            if (primitive < FSET_START) {
+                starts[top++] = end;
+                ops[end] = primitive;
+                nums[end++] = ctx.numbers[pc];
+            } else if (primitive > FSET_2ARG_END) {
+                int operand = starts[top - 1];
+                if (end - operand == 1 && ops[operand] == 0)  // the rules made its operand a constant
+                    nums[operand] = fold(primitive, nums[operand], 0.0);
+                else
+                    ops[end++] = primitive;
+            } else {
+                int first = starts[--top];  // pushed last
+                end = rewrite(ops, nums, primitive, starts[top - 1], first, end);
+            }
+        }
+        for (int i = 0; i < end; i++) {
+            ctx.operations[i] = ops[end - 1 - i];
+            ctx.numbers[i] = nums[end - 1 - i];
+        }
+        ctx.length = end;
+    }
+
+    // the second operand of primitive is in [start, middle) and the first in [middle, end), returns the end of the result
+    static int rewrite(char[] ops, double[] nums, int primitive, int start, int middle, int end) {
+        boolean first_constant = end - middle == 1 && ops[middle] == 0;
+        boolean second_constant = middle - start == 1 && ops[start] == 0;
+        double first = nums[middle], second = nums[start];
+        if (first_constant && second_constant)
+            return constant(ops, nums, start, fold(primitive, first, second));
+        switch (primitive) {
+            case ADD -> {
+                if (second_constant && second == 0.0)
+                    return move(ops, nums, middle, end, start);
+                if (first_constant && first == 0.0)
+                    return middle;
+            }
+            case SUB -> {
+                if (second_constant && second == 0.0)
+                    return move(ops, nums, middle, end, start);
+                if (same(ops, nums, start, middle, end))
+                    return constant(ops, nums, start, 0.0);
+                if (second_constant) {  // x-c is x+(-c), so it joins the chains of ADD
+                    nums[start] = -second;
+                    return rewrite(ops, nums, ADD, start, middle, end);
+                }
+                // c1-(c2+x) is (c1-c2)-x
+                if (first_constant && ops[middle - 1] == ADD && ops[middle - 2] == 0) {
+                    nums[middle - 2] = first - nums[middle - 2];
+                    ops[middle - 1] = (char) SUB;
+                    return middle;
+                }
+            }
+            case MUL -> {
+                if ((second_constant && second == 0.0) || (first_constant && first == 0.0))
+                    return constant(ops, nums, start, 0.0);
+                if (second_constant && second == 1.0)
+                    return move(ops, nums, middle, end, start);
+                if (first_constant && first == 1.0)
+                    return middle;
+            }
+            case DIV -> {
+                if (second_constant && (second == 1.0 || Math.abs(second) <= DIVISION_CUT_OUT))
+                    return move(ops, nums, middle, end, start);
+                if (first_constant && first == 0.0)
+                    return constant(ops, nums, start, 0.0);
+            }
+        }
+        if (primitive == ADD || primitive == MUL) {
+            if (compare(ops, nums, middle, end, start, middle) > 0) {  // the operands swap places
+                rotate(ops, nums, start, middle, end);
+                middle = start + end - middle;
+                first_constant = end - middle == 1 && ops[middle] == 0;
+                first = nums[middle];
+            }
+            // constants sort first, so c1 op (c2 op x) is the only shape left to merge, into (c1 op c2) op x
+            if (first_constant && ops[middle - 1] == primitive && ops[middle - 2] == 0)
+                return rewrite(ops, nums, primitive, start, middle - 2, middle - 1, first, nums[middle - 2]);
+            // c1+(c2-x) is (c1+c2)-x
+            if (primitive == ADD && first_constant && ops[middle - 1] == SUB && ops[middle - 2] == 0) {
+                nums[middle - 2] = first + nums[middle - 2];
+                return middle;
+            }
+        }
+        ops[end] = (char) primitive;
+        return end + 1;
+    }
+
+    // merges the constants of c1 op (c2 op x), x is in [start, middle), c2 was at middle
+    static int rewrite(char[] ops, double[] nums, int primitive, int start, int middle, int end, double c1, double c2) {
+        nums[middle] = fold(primitive, c1, c2);
+        return rewrite(ops, nums, primitive, start, middle, end);  // the merged constant can be 0 or 1
+    }
+
+    static int constant(char[] ops, double[] nums, int at, double value) {
+        ops[at] = 0;
+        nums[at] = value;
+        return at + 1;
+    }
+
+    static int move(char[] ops, double[] nums, int from, int to, int at) {  // [from, to) to at, returns the new end
+        System.arraycopy(ops, from, ops, at, to - from);
+        System.arraycopy(nums, from, nums, at, to - from);
+        return at + to - from;
+    }
+
+    static boolean same(char[] ops, double[] nums, int start, int middle, int end) {  // [start, middle) equals [middle, end)
+        return middle - start == end - middle && equal(ops, nums, start, middle, middle - start);
+    }
+
+    static boolean equal(char[] ops, double[] nums, int a, int b, int n) {  // n tokens from a and from b
+        for (int i = 0; i < n; i++)
+            if (ops[a + i] != ops[b + i] || (ops[a + i] == 0 && Double.compare(nums[a + i], nums[b + i]) != 0))
+                return false;
+        return true;
+    }
+
+    // total order of subtrees: shorter first, then token by token, constants before variables before operations
+    static int compare(char[] ops, double[] nums, int a, int a_end, int b, int b_end) {
+        if (a_end - a != b_end - b)
+            return Integer.compare(a_end - a, b_end - b);
+        for (; a < a_end; a++, b++) {
+            if (ops[a] != ops[b])
+                return Integer.compare(ops[a], ops[b]);
+            if (ops[a] == 0 && Double.compare(nums[a], nums[b]) != 0)
+                return Double.compare(nums[a], nums[b]);
+        }
+        return 0;
+    }
+
+    static void rotate(char[] ops, double[] nums, int start, int middle, int end) {  // swaps [start, middle) and [middle, end)
+        reverse(ops, nums, start, middle);
+        reverse(ops, nums, middle, end);
+        reverse(ops, nums, start, end);
+    }
+
+    static void reverse(char[] ops, double[] nums, int from, int to) {
+        for (int i = from, j = to - 1; i < j; i++, j--) {
+            char op = ops[i];
+            ops[i] = ops[j];
+            ops[j] = op;
+            double num = nums[i];
+            nums[i] = nums[j];
+            nums[j] = num;
+        }
+    }
+
+    static double run(double[] stack, EvaluationContext ctx) {
+        boolean shared = COMMON_SUBEXPRESSIONS && ctx.shared, fused = SUPERINSTRUCTIONS && ctx.fused;
+        char[] operations = fused ? ctx.fused_operations : shared ? ctx.dag_operations : ctx.operations;
+        double[] numbers = fused ? ctx.fused_numbers : shared ? ctx.dag_numbers : ctx.numbers;
+        int[] memo_of = fused ? ctx.fused_memo : ctx.memo_of;
+        int sp = 0;
+        int pc = (fused ? ctx.fused_length : shared ? ctx.dag_length : ctx.length) - 1;
+
+        while (pc >= 0) {
+            int primitive = operations[pc--];
+
+            if (primitive < FSET_START) {
+                stack[sp++] = (primitive == 0) ? numbers[pc + 1] : ctx.variables[primitive - 1];
+            } else {
+                double result;
+                switch (primitive) {
+                    case ADD -> result = stack[--sp] + stack[--sp];
+                    case SUB -> result = stack[--sp] - stack[--sp];
+                    case MUL -> result = stack[--sp] * stack[--sp];
+                    case DIV -> {
+                        double num = stack[--sp];
+                        double den = stack[--sp];
+                        result = Math.abs(den) <= DIVISION_CUT_OUT ? num : num / den;
+                    }
+                    case EXP -> {
+                        double num = stack[--sp];
+                        result = num <= EXPONENT_CUT_OUT ? Math.exp(num) : num;
+                    }
+                    case SIN -> result = Math.sin(Math.toRadians(stack[--sp]));
+                    case COS -> result = Math.cos(Math.toRadians(stack[--sp]));
+                    case SHARED -> result = ctx.memo[memo_of[pc + 1]];
+                    case FMA -> result = Math.fma(stack[--sp], stack[--sp], stack[--sp]);
+                    case FMA_SWAPPED -> {
+                        double addend = stack[--sp];
+                        result = Math.fma(stack[--sp], stack[--sp], addend);
+                    }
+                    case MUL_CV -> result = numbers[pc + 1] * ctx.variables[ctx.fused_variables[pc + 1]];
+                    case FMA_CV -> result = Math.fma(numbers[pc + 1], ctx.variables[ctx.fused_variables[pc + 1]], stack[--sp]);
+                    case SIN_CV -> result = Math.sin(Math.toRadians(numbers[pc + 1] * ctx.variables[ctx.fused_variables[pc + 1]]));
+                    case COS_CV -> result = Math.cos(Math.toRadians(numbers[pc + 1] * ctx.variables[ctx.fused_variables[pc + 1]]));
+                    default -> throw new IllegalStateException("Unknown op: " + primitive);
+                }
+                stack[sp++] = result;
+                if (shared && memo_of[pc + 1] >= 0)  // SHARED tokens store their value back, it saves a branch
+                    ctx.memo[memo_of[pc + 1]] = result;
+            }
+        }
+        return stack[--sp];
+    }
+
+    static byte[] arity_table() {
+        byte[] arity = new byte[FSET_END + 1];
+        for (int primitive = FSET_START; primitive <= FSET_END; primitive++)
+            arity[primitive] = (byte) (primitive <= FSET_2ARG_END ? 2 : 1);
+        return arity;
+    }
+
+    /**
+     * Fills ends[i] with the end (exclusive) of the subtree starting at i, children end before their parents
+     * so one backward pass does it; the size of the subtree at i is ends[i] - i.
+     */
+    static void subtree_ends(char[] prog, int len, int[] ends) {
+        for (int i = len - 1; i >= 0; i--) {
+            switch (ARITY[prog[i]]) {
+                case 0 -> ends[i] = i + 1;
+                case 1 -> ends[i] = ends[i + 1];
+                default -> ends[i] = ends[ends[i + 1]];
+            }
+        }
+    }
+
+    // functions on the longest path from the root to a terminal, like grow's depth; stack needs len entries
+    static int tree_depth(char[] prog, int len, int[] stack) {
+        int sp = 0;
+        for (int i = len - 1; i >= 0; i--) {
+            switch (ARITY[prog[i]]) {
+                case 0 -> stack[sp++] = 0;
+                case 1 -> stack[sp - 1]++;
+                default -> {
+                    sp--;
+                    stack[sp - 1] = Math.max(stack[sp - 1], stack[sp]) + 1;
+                }
+            }
+        }
+        return stack[0];
+    }
+
+    // hash-conses the simplified program into a DAG for run and run_batch: the repeats of a subtree become SHARED tokens,
+    // loading the memo its original stored, the occurrence last in prefix order, as it's the first one evaluated.
+    // Leaves aren't shared, loading one is as cheap as loading a memo
+    static void share(EvaluationContext ctx) {
+        if (ctx.shared)
+            return;
+        int len = ctx.length;
+        SubtreeCache.hash(ctx);
+        ctx.reserve_dag(len);
+        long[] hash1 = ctx.subtree_hash1, hash2 = ctx.subtree_hash2;
+        int[] size = ctx.subtree_size, original = ctx.original, memo_at = ctx.memo_at, table = ctx.dag_table;
+        int mask = (Integer.highestOneBit(len) << 2) - 1;
+        Arrays.fill(table, 0, mask + 1, 0);
+        for (int i = len - 1; i >= 0; i--) {  // going down, the first occurrence found is the original
+            original[i] = i;
+            if (size[i] < 2)
+                continue;
+            for (int h = (int) hash1[i] & mask; ; h = (h + 1) & mask) {
+                int j = table[h] - 1;
+                if (j < 0) {
+                    table[h] = i + 1;
+                    break;
+                }
+                if (hash1[j] == hash1[i] && hash2[j] == hash2[i] && equal(ctx.operations, ctx.numbers, i, j, size[i])) {
+                    original[i] = j;
+                    break;
+                }
+            }
+        }
+        // an original is never inside a repeat, the repeat's own original would hold a later copy of it
+        Arrays.fill(memo_at, 0, len, -1);
+        int length = 0, memos = 0, repeats = 0;
+        for (int i = 0; i < len; length++) {
+            int j = original[i];
+            if (j != i) {
+                if (memo_at[j] < 0)
+                    memo_at[j] = memos++;
+                ctx.dag_operations[length] = SHARED;
+                ctx.memo_of[length] = memo_at[j];
+                repeats++;
+                i += size[i];
+            } else {
+                ctx.dag_operations[length] = ctx.operations[i];
+                ctx.dag_numbers[length] = ctx.numbers[i];
+                ctx.memo_of[length] = memo_at[i];
+                i++;
+            }
+        }
+        ctx.dag_length = length;
+        ctx.memos = memos;
+        ctx.unique = length - repeats;
+        ctx.shared = true;
+    }
+
+    // peephole pass of the stack evaluator, rewrites the program (or its DAG) into ctx.fused_operations with
+    // superinstructions: each one saves a push, a pop and a dispatch per fitness case. Built in reverse like rewrite.
+    // Nodes whose value a repeat loads from a memo aren't fused into their parents
+    static void fuse(EvaluationContext ctx) {
+        if (ctx.fused)
+            return;
+        boolean shared = COMMON_SUBEXPRESSIONS && ctx.shared;
+        char[] program = shared ? ctx.dag_operations : ctx.operations;
+        double[] constants = shared ? ctx.dag_numbers : ctx.numbers;
+        int len = shared ? ctx.dag_length : ctx.length;
+        ctx.reserve_fused(len);
+        char[] ops = ctx.fused_operations;
+        double[] nums = ctx.fused_numbers;
+        int[] vars = ctx.fused_variables, memo = ctx.fused_memo, starts = ctx.starts;
+        int top = 0, end = 0;
+        for (int pc = len - 1; pc >= 0; pc--) {
+            int primitive = program[pc];
+            int store = shared ? ctx.memo_of[pc] : -1;
+            if (primitive < FSET_START || primitive == SHARED) {
+                starts[top++] = end;
+                nums[end] = constants[pc];
+                end = emit(ops, memo, end, primitive, store);
+            } else if (primitive > FSET_2ARG_END) {
+                if ((primitive == SIN || primitive == COS) && ops[end - 1] == MUL_CV && memo[end - 1] < 0)
+                    emit(ops, memo, end - 1, primitive == SIN ? SIN_CV : COS_CV, store);
+                else
+                    end = emit(ops, memo, end, primitive, store);
+            } else {
+                // the second operand is in [second, first), the first in [first, end), roots last
+                int first = starts[--top], second = starts[top - 1];
+                if (primitive == MUL && end - first == 1 && first - second == 1
+                        && (ops[first] == 0) != (ops[second] == 0) && ops[first] < FSET_START && ops[second] < FSET_START) {
+                    int c = ops[first] == 0 ? first : second, v = first + second - c;
+                    nums[second] = nums[c];
+                    vars[second] = ops[v] - 1;
+                    end = emit(ops, memo, second, MUL_CV, store);
+                } else if (primitive == ADD && ops[end - 1] == MUL && memo[end - 1] < 0) {
+                    emit(ops, memo, end - 1, FMA, store);
+                } else if (primitive == ADD && ops[end - 1] == MUL_CV && memo[end - 1] < 0) {
+                    emit(ops, memo, end - 1, FMA_CV, store);
+                } else if (primitive == ADD && ops[first - 1] == MUL && memo[first - 1] < 0) {
+                    end = move(ops, nums, first, end, first - 1);
+                    System.arraycopy(vars, first, vars, first - 1, end - first + 1);
+                    System.arraycopy(memo, first, memo, first - 1, end - first + 1);
+                    end = emit(ops, memo, end, FMA_SWAPPED, store);
+                } else if (primitive == ADD && ops[first - 1] == MUL_CV && memo[first - 1] < 0) {
+                    double c = nums[second];
+                    int v = vars[second];
+                    end = move(ops, nums, first, end, second);
+                    System.arraycopy(vars, first, vars, second, end - second);
+                    System.arraycopy(memo, first, memo, second, end - second);
+                    nums[end] = c;
+                    vars[end] = v;
+                    end = emit(ops, memo, end, FMA_CV, store);
+                } else {
+                    end = emit(ops, memo, end, primitive, store);
+                }
+            }
+        }
+        for (int i = 0; i < end; i++)  // the superinstructions are counted as they are rewritten, not before
+            if (ops[i] >= FMA && ops[i] < SHARED)
+                superinstructions[ops[i] - FMA].increment();
+        instructions.add(end);
+        // back to prefix order, run walks it from the end
+        reverse(ops, nums, 0, end);
+        reverse(vars, 0, end);
+        reverse(memo, 0, end);
+        ctx.fused_length = end;
+        ctx.fused = true;
+    }
+
+    static int emit(char[] ops, int[] memo, int at, int primitive, int store) {
+        ops[at] = (char) primitive;
+        memo[at] = store;
+        return at + 1;
+    }
+
+    static void reverse(int[] values, int from, int to) {
+        for (int i = from, j = to - 1; i < j; i++, j--) {
+            int value = values[i];
+            values[i] = values[j];
+            values[j] = value;
+        }
+    }
+
+    static int stack_depth(EvaluationContext ctx) {  // of the program as simplified, the DAG never needs more
+        int sp = 0, depth = 0;
+        for (int pc = ctx.length - 1; pc >= 0; pc--) {
+            int primitive = ctx.operations[pc];
+            if (primitive < FSET_START)
+                depth = Math.max(depth, ++sp);
+            else if (primitive <= FSET_2ARG_END)
+                sp--;
+        }
+        return depth;
+    }
+
+    static double[] run_batch(EvaluationContext ctx, int from, int n) {
+        // same walk as run, but every stack slot holds the values of n consecutive fitness cases
+        double[][] slots = ctx.slots;
+        boolean shared = COMMON_SUBEXPRESSIONS && ctx.shared;
+        char[] operations = shared ? ctx.dag_operations : ctx.operations;
+        double[] numbers = shared ? ctx.dag_numbers : ctx.numbers;
+        int sp = 0;
+        int pc = (shared ? ctx.dag_length : ctx.length) - 1;
+
+        while (pc >= 0) {
+            int primitive = operations[pc--];
+
+            if (primitive < FSET_START) {
+                double[] out = slots[sp++];
+                if (primitive == 0)
+                    Arrays.fill(out, 0, n, numbers[pc + 1]);
+                else
+                    System.arraycopy(columns[primitive - 1], from, out, 0, n);
+                continue;
+            } else if (primitive == SHARED) {
+                System.arraycopy(ctx.memo_vectors[ctx.memo_of[pc + 1]], 0, slots[sp++], 0, n);
+                continue;
+            } else if (primitive <= FSET_2ARG_END) {
+                double[] a = slots[--sp];
+                double[] b = slots[sp - 1];  // second argument, overwritten with the result
+                switch (primitive) {
+                    case ADD -> kernels.add(a, b, n);
+                    case SUB -> kernels.sub(a, b, n);
+                    case MUL -> kernels.mul(a, b, n);
+                    case DIV -> kernels.div(a, b, n);
+                    default -> throw new IllegalStateException("Unknown op: " + primitive);
+                }
+            } else {
+                double[] a = slots[sp - 1];
+                switch (primitive) {
+                    case EXP -> kernels.exp(a, n);
+                    case SIN -> kernels.sin(a, n);
+                    case COS -> kernels.cos(a, n);
+                    default -> throw new IllegalStateException("Unknown op: " + primitive);
+                }
+            }
+            if (shared && ctx.memo_of[pc + 1] >= 0)
+                System.arraycopy(slots[sp - 1], 0, ctx.memo_vectors[ctx.memo_of[pc + 1]], 0, n);
+        }
+        return slots[0];
+    }
+
+    static void reserve_slots(EvaluationContext ctx, int depth) {
+        if (ctx.slots.length < depth) {
+            int size = ctx.slots.length;
+            ctx.slots = Arrays.copyOf(ctx.slots, Math.max(depth, 2 * size));
+            for (int i = size; i < ctx.slots.length; i++)
+                ctx.slots[i] = new double[BATCH_SIZE];
+        }
+    }
+
+    static double batch_fitness(EvaluationContext ctx) {
+        double fit = 0.0, threshold = rejection_threshold;
+        reserve_slots(ctx, stack_depth(ctx));
+        if (COMMON_SUBEXPRESSIONS) {
+            share(ctx);
+            count_shared(ctx);
+            if (ctx.memo_vectors.length < ctx.memos) {
+                int size = ctx.memo_vectors.length;
+                ctx.memo_vectors = Arrays.copyOf(ctx.memo_vectors, Math.max(ctx.memos, 2 * size));
+                for (int i = size; i < ctx.memo_vectors.length; i++)
+                    ctx.memo_vectors[i] = new double[BATCH_SIZE];
+            }
+        }
+        double[] expected = columns[varnumber];
+        for (int from = 0; from < fitnesscases; from += EVAL_BLOCK) {
+            int n = Math.min(EVAL_BLOCK, fitnesscases - from);
+            fit += kernels.error(run_batch(ctx, from, n), expected, from, n);
+            if (fit > threshold)
+                return reject(from + n);
+        }
+        return -fit;
+    }
+
+    static double stack_fitness(EvaluationContext ctx) {
+        double result, actual, fit = 0.0, threshold = rejection_threshold;
+        if (ctx.stack.length < ctx.length)
+            ctx.stack = new double[ctx.length];
+        double[] stack = ctx.stack;
+        if (COMMON_SUBEXPRESSIONS) {
+            share(ctx);
+            count_shared(ctx);
+            if (ctx.memo.length < ctx.memos)
+                ctx.memo = new double[Math.max(ctx.memos, 2 * ctx.memo.length)];
+        }
+        if (SUPERINSTRUCTIONS)
+            fuse(ctx);
+        double[][] rows = targets;  // null for the other evaluators, which call this as their reference
+        for (int i = 0; i < fitnesscases; ++i ) {
+            if (rows != null) {
+                System.arraycopy(rows[i], 0, ctx.variables, 0, varnumber);
+                actual = rows[i][varnumber];
+            } else {
+                for (int j = 0; j < varnumber; j++)
+                    ctx.variables[j] = columns[j][i];
+                actual = columns[varnumber][i];
+            }
+            result = run(stack, ctx);
+            fit += error(result, actual);
+            if (fit > threshold)
+                return reject(i + 1);
+        }
+        return -fit;
+    }
+
+    static double closure_fitness(EvaluationContext ctx) {
+        double fit = 0.0, threshold = rejection_threshold;
+        Node root = ClosureCompiler.compile(ctx);
+        double[] expected = columns[varnumber];
+        for (int from = 0; from < fitnesscases; from += EVAL_BLOCK) {
+            int n = Math.min(EVAL_BLOCK, fitnesscases - from);
+            root.eval(ctx.slots, from, n, ctx.results);
+            fit += kernels.error(ctx.results, expected, from, n);
+            if (fit > threshold)
+                return reject(from + n);  // recorded subtrees are incomplete, they're dropped with the next compile
+        }
+        if (!ctx.recorders.isEmpty())
+            subtree_cache.admit(ctx.recorders);
+        return -fit;
+    }
+
+    static double compiled_fitness(CompiledProgram program, EvaluationContext ctx) {
+        double fit = 0.0, threshold = rejection_threshold;
+        double[] expected = columns[varnumber];
+        for (int from = 0; from < fitnesscases; from += EVAL_BLOCK) {
+            int n = Math.min(EVAL_BLOCK, fitnesscases - from);
+            program.eval(columns, ctx.results, from, n);
+            fit += kernels.error(ctx.results, expected, from, n);
+            if (fit > threshold)
+                return reject(from + n);
+        }
+        return -fit;
+    }
+
+    static void count_shared(EvaluationContext ctx) {
+        dag_nodes.add(ctx.length);
+        dag_unique.add(ctx.unique);
+    }
+
+    static double reject(int evaluated) {  // the error so far is already past the threshold
+        cases_skipped.add(fitnesscases - evaluated);
+        rejected.increment();
+        return REJECTED;
+    }
+
+    // error at REJECTION_PERCENTILE of the programs that weren't rejected, selected in the scratch array
+    static double rejection_threshold(double[] fitness) {
+        if (rejection_errors.length < fitness.length)
+            rejection_errors = new double[fitness.length];
+        double[] errors = rejection_errors;
+        int n = 0;
+        for (double f : fitness)
+            if (f != REJECTED && !Double.isNaN(f))
+                errors[n++] = -f;
+        if (n == 0)
+            return Double.POSITIVE_INFINITY;
+        return select(errors, n, Math.max(0, (int) Math.ceil(REJECTION_PERCENTILE / 100.0 * n) - 1));
+    }
+
+    // the k-th smallest of values[0, n), quickselect with a median-of-three pivot, reorders values
+    static double select(double[] values, int n, int k) {
+        int lo = 0, hi = n - 1;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (values[mid] < values[lo]) swap(values, lo, mid);
+            if (values[hi] < values[lo]) swap(values, lo, hi);
+            if (values[hi] < values[mid]) swap(values, mid, hi);
+            double pivot = values[mid];
+            int i = lo, j = hi;
+            while (i <= j) {
+                while (values[i] < pivot) i++;
+                while (values[j] > pivot) j--;
+                if (i <= j)
+                    swap(values, i++, j--);
+            }
+            if (k <= j)
+                hi = j;
+            else if (k >= i)
+                lo = i;
+            else
+                return values[k];
+        }
+        return values[k];
+    }
+
+    static void swap(double[] values, int i, int j) {
+        double value = values[i];
+        values[i] = values[j];
+        values[j] = value;
+    }
+
+    // sorts the fitness cases by their summed error over a sample of the population, highest first,
+    // so hopeless programs pass the rejection threshold after fewer cases
+    static void order_cases(double[] fitness, char[][] pop) {
+        double[] score = new double[fitnesscases];
+        double[] expected = columns[varnumber];
+        EvaluationContext ctx = new EvaluationContext();
+        ctx.variables = new double[varnumber];
+        for (int s = 0; s < ORDERING_SAMPLE; s++) {
+            int i = rd.nextInt(POPSIZE);
+            if (fitness[i] == REJECTED || !Double.isFinite(fitness[i]))
+                continue;
+            simplify(POPULATION_ARENA ? arena.program(i) : pop[i], ctx);
+            reserve_slots(ctx, stack_depth(ctx));
+            for (int from = 0; from < fitnesscases; from += BATCH_SIZE) {
+                int n = Math.min(BATCH_SIZE, fitnesscases - from);
+                double[] out = run_batch(ctx, from, n);
+                for (int k = 0; k < n; k++) {
+                    double result = out[k], actual = expected[from + k];
+                    double error = error(result, actual);
+                    if (Double.isFinite(error))
+                        score[from + k] += error;
+                }
+            }
+        }
+        Integer[] order = new Integer[fitnesscases];
+        for (int i = 0; i < fitnesscases; i++)
+            order[i] = i;
+        Arrays.sort(order, (a, b) -> Double.compare(score[b], score[a]));
+
+        double[][] ordered_targets = targets == null ? null : new double[fitnesscases][];
+        double[][] ordered_columns = new double[varnumber + 1][fitnesscases];
+        for (int i = 0; i < fitnesscases; i++) {
+            if (targets != null)
+                ordered_targets[i] = targets[order[i]];
+            for (int j = 0; j <= varnumber; j++)
+                ordered_columns[j][i] = columns[j][order[i]];
+        }
+        targets = ordered_targets;
+        columns = ordered_columns;
+        if (subtree_cache != null)
+            subtree_cache.clear();  // its vectors are in the old case order
+    }
+
+    static double fitness_function(char [] prog, EvaluationContext ctx) {
+        return fitness_function(prog, prog.length, ctx);
+    }
+
+    static double fitness_function(char [] prog, int len, EvaluationContext ctx) {
+        simplify(prog, len, ctx);
+        if (FITNESS_CACHE_SIZE > 0) {
+            FitnessCache.hash(ctx);
+            if (fitness_cache.get(ctx)) {
+                if (COMPILE_THRESHOLD > 0)
+                    ProgramCompiler.count(ctx);
+                return ctx.cached;
+            }
+            double fit = evaluate(ctx);
+            if (fit != REJECTED)  // the threshold changes every generation, rejection isn't a property of the program
+                fitness_cache.put(ctx, fit);
+            return fit;
+        }
+        return evaluate(ctx);
+    }
+
+    static double evaluate(EvaluationContext ctx) {  // fitness of the simplified program in ctx
+        if (REJECTION_PERCENTILE > 0)
+            cases_total.add(fitnesscases);
+        if (COMPILE_THRESHOLD > 0) {
+            CompiledProgram program = ProgramCompiler.hot(ctx);
+            if (program != null)
+                return compiled_fitness(program, ctx);
+        }
+        if (EVALUATOR == EVAL_BATCH)
+            return batch_fitness(ctx);
+        if (EVALUATOR == EVAL_CLOSURE)
+            return closure_fitness(ctx);
+        return stack_fitness(ctx);
+    }
+
+    int grow(char [] buffer, int pos, int max, int depth, RandomGenerator rd) {
+        char prim = (char) rd.nextInt(2);
+        int one_child;
+
+        if ( pos >= max )
+            return( -1 );
+
+        if ( pos == 0 )
+            prim = 1;
+
+        if ( prim == 0 || depth == 0 ) {
+            prim = (char) rd.nextInt(varnumber + randomnumber);
+            buffer[pos] = prim;
+            return(pos+1);
+        }
+        else  {
+            prim = FUNCTIONS[rd.nextInt(FUNCTIONS.length)];
+            if (prim <= FSET_2ARG_END) {  // 2 argument functions
+                buffer[pos] = prim;
+                one_child = grow(buffer, pos + 1, max, depth - 1, rd);
+                if (one_child < 0)
+                    return -1 ;
+                return grow(buffer, one_child, max, depth - 1, rd);
+            } else if (prim <= FSET_END) {  // 1 argument functions
+                buffer[pos] = prim;
+                return grow(buffer, pos + 1, max, depth - 1, rd);
+            }
+        }
+        return 0; // should never get here
+    }
+
+    int full(char [] buffer, int pos, int max, int depth, RandomGenerator rd) {  // as grow, with functions down to depth
+        if ( pos >= max )
+            return( -1 );
+
+        if ( depth == 0 ) {
+            buffer[pos] = (char) rd.nextInt(varnumber + randomnumber);
+            return(pos+1);
+        }
+        char prim = FUNCTIONS[rd.nextInt(FUNCTIONS.length)];
+        buffer[pos] = prim;
+        int one_child = full(buffer, pos + 1, max, depth - 1, rd);
+        if (one_child < 0 || prim > FSET_2ARG_END)
+            return one_child;
+        return full(buffer, one_child, max, depth - 1, rd);
+    }
+
+    // appends the program as an infix expression to out, the caller reuses out
+    int render(char []buffer, int buffercounter, StringBuilder out) {
+        int a1=0, a2;
+        if (buffer[buffercounter] < FSET_START) {
+            if (buffer[buffercounter] < varnumber)
+                out.append('X').append(buffer[buffercounter] + 1);
+            else
+                out.append(x[buffer[buffercounter]]);
+            return ++buffercounter;
+        }
+        switch(buffer[buffercounter]) {
+            case ADD: out.append("(");
+                a1 = render(buffer, ++buffercounter, out);
+                out.append(" + ");
+                break;
+            case SUB: out.append("(");
+                a1 = render(buffer, ++buffercounter, out);
+                out.append(" - ");
+                break;
+            case MUL: out.append("(");
+                a1 = render(buffer, ++buffercounter, out);
+                out.append(" * ");
+                break;
+            case DIV: out.append("(");
+                a1 = render(buffer, ++buffercounter, out);
+                out.append(" / ");
+                break;
+            case EXP: out.append("EXP(");
+                a1 = ++buffercounter;
+                break;
+            case SIN: out.append("SIN(");
+                a1 = ++buffercounter;
+                break;
+            case COS: out.append("COS(");
+                a1 = ++buffercounter;
+                break;
+        }
+        a2 = render(buffer, a1, out);
+        out.append(")");
+        return a2;
+    }
+
+
+    // the i-th initial program into buffer
+    int create_random_individual(char [] buffer, int i, int depth, RandomGenerator rd) {
+        int shallowest = Math.max(1, Math.min(MIN_DEPTH, depth));
+        int ramp = depth - shallowest + 1;
+        boolean full = INIT_METHOD == INIT_FULL || (INIT_METHOD == INIT_RAMPED && (i / ramp) % 2 == 1);
+        if (INIT_METHOD == INIT_RAMPED)
+            depth = shallowest + i % ramp;
+        int len;
+
+        do len = full ? full(buffer, 0, MAX_LEN, depth, rd) : grow(buffer, 0, MAX_LEN, depth, rd);
+        while (len < 0);
+        return len;
+    }
+
+    // redraws, in index order, every program that repeats an earlier one, at most INIT_ATTEMPTS - 1 times; each from
+    // a stream of its own after the seeds of the first draws, so which one is kept doesn't depend on the workers
+    void make_unique(char [][] pop, double [] fitness, int n, int depth, long population_seed) {
+        Set<String> seen = new HashSet<>(2 * n);
+        EvaluationContext ctx = new EvaluationContext();
+        ctx.variables = new double[variables.length];
+        PopulationArena.Allocator allocator = POPULATION_ARENA ? arena.allocator() : null;
+        char [] buffer = new char[MAX_LEN];
+
+        for (int i = 0; i < n; i++) {
+            if (seen.add(new String(POPULATION_ARENA ? arena.program(i) : pop[i])) || INIT_ATTEMPTS < 2)
+                continue;
+            RandomGenerator rd = new SplittableRandom(mix_seed(population_seed + n + i));
+            int len;
+            for (int attempt = 2; ; attempt++) {
+                redrawn.increment();
+                len = create_random_individual(buffer, i, depth, rd);
+                if (seen.add(new String(buffer, 0, len)) || attempt == INIT_ATTEMPTS)
+                    break;
+            }
+            fitness[i] = fitness_function(buffer, len, ctx);
+            if (POPULATION_ARENA)
+                arena.set(i, allocator.put(buffer, len), len);
+            else
+                pop[i] = Arrays.copyOf(buffer, len);
+        }
+    }
+
+    // built and evaluated by the workers, each with a buffer and random streams of its own like in evolve
+    char [][] create_random_pop(int n, int depth, double [] fitness) {  // null with POPULATION_ARENA, it's filled instead
+        char [][]pop = POPULATION_ARENA ? null : new char[n][];
+        long population_seed = streams.nextLong();
+        int chunkSize = (int) Math.ceil((double) n / NUM_THREADS);
+        Round round = new Round(NUM_THREADS);
+
+        for (int t = 0; t < NUM_THREADS; t++) {
+            int start = t * chunkSize;
+            int end = Math.min(start + chunkSize, n);
+            SplittableRandom worker_rd = streams.split();
+            round.submit(() -> {
+                EvaluationContext ctx = new EvaluationContext();
+                ctx.variables = new double[variables.length];
+                PopulationArena.Allocator allocator = POPULATION_ARENA ? arena.allocator() : null;
+                char [] buffer = new char[MAX_LEN];
+
+                for (int i = start; i < end; i++) {
+                    RandomGenerator rd = RNG_STREAMS == RNG_PER_INDIVIDUAL
+                            ? new SplittableRandom(mix_seed(population_seed + i))
+                            : worker_rd;
+                    int len = create_random_individual(buffer, i, depth, rd);
+                    fitness[i] = fitness_function(buffer, len, ctx);
+                    if (POPULATION_ARENA)
+                        arena.set(i, allocator.put(buffer, len), len);
+                    else
+                        pop[i] = Arrays.copyOf(buffer, len);
+                }
+            });
+        }
+
+        round.await("Initialization");
+        if (INIT_UNIQUE)
+            make_unique(pop, fitness, n, depth, population_seed);
+        return( pop );
+    }
+
+
+    // best, error sum, rejected and node count of every block of the population, and the sorted hashes of its
+    // programs, reduced by the workers; blocks have a fixed size, so the sums don't depend on the thread count
+    void reduce(double [] fitness, char [][] pop) {
+        int blocks = (POPSIZE + STATS_BLOCK - 1) / STATS_BLOCK;
+        if (block_best == null) {
+            block_best = new int[blocks];
+            block_rejected = new int[blocks];
+            block_fitness = new double[blocks];
+            block_sum = new double[blocks];
+            block_nodes = new long[blocks];
+            program_hashes = new long[POPSIZE];
+            merge_cursors = new int[Math.min(NUM_THREADS, blocks)][3 * blocks];
+        }
+        int tasks = Math.min(NUM_THREADS, blocks);
+        Round round = new Round(tasks);
+
+        for (int t = 0; t < tasks; t++) {
+            int first = t;
+            round.submit(() -> {
+                for (int b = first; b < blocks; b += tasks) {
+                    int best = -1, rejected = 0;
+                    double best_fitness = Double.NEGATIVE_INFINITY, sum = 0.0;
+                    long nodes = 0;
+                    for (int i = b * STATS_BLOCK; i < Math.min((b + 1) * STATS_BLOCK, POPSIZE); i++) {
+                        nodes += POPULATION_ARENA ? arena.length(i) : pop[i].length;
+                        program_hashes[i] = POPULATION_ARENA ? arena.hash(i) : program_hash(pop[i], pop[i].length);
+                        if ( fitness[i] == REJECTED ) {  // not in the average, its fitness is only a marker
+                            rejected ++;
+                            continue;
+                        }
+                        sum += fitness[i];
+                        if ( fitness[i] > best_fitness ) {
+                            best = i;
+                            best_fitness = fitness[i];
+                        }
+                    }
+                    block_best[b] = best;
+                    block_fitness[b] = best_fitness;
+                    block_rejected[b] = rejected;
+                    block_sum[b] = sum;
+                    block_nodes[b] = nodes;
+                    Arrays.sort(program_hashes, b * STATS_BLOCK, Math.min((b + 1) * STATS_BLOCK, POPSIZE));
+                }
+            });
+        }
+
+        round.await("Statistics");
+    }
+
+    // the distinct hashes of the programs: each worker merges the sorted blocks over a range of hash values of its
+    // own and counts the distinct ones in it; the ranges don't overlap, so the counts add up
+    int distinct_programs() {
+        int blocks = block_best.length;
+        int tasks = Math.min(NUM_THREADS, blocks);
+        long step = Long.divideUnsigned(-1L, tasks);
+        int [] distinct = new int[tasks];
+        Round round = new Round(tasks);
+
+        for (int t = 0; t < tasks; t++) {
+            int range = t;
+            round.submit(() -> {
+                int [] heap = merge_cursors[range];  // block numbers in [0, blocks), then positions, then ends
+                int size = 0, count = 0;
+                for (int b = 0; b < blocks; b++) {
+                    int from = b * STATS_BLOCK, to = Math.min(from + STATS_BLOCK, POPSIZE);
+                    heap[blocks + b] = range == 0 ? from
+                            : lower_bound(program_hashes, from, to, Long.MIN_VALUE + step * range);
+                    heap[2 * blocks + b] = range == tasks - 1 ? to
+                            : lower_bound(program_hashes, from, to, Long.MIN_VALUE + step * (range + 1));
+                    if (heap[blocks + b] < heap[2 * blocks + b])
+                        sift_up(heap, size++, b, blocks);
+                }
+                long last = 0;
+                while (size > 0) {
+                    int b = heap[0];
+                    long hash = program_hashes[heap[blocks + b]++];
+                    if (count == 0 || hash != last)
+                        count ++;
+                    last = hash;
+                    if (heap[blocks + b] == heap[2 * blocks + b])
+                        b = heap[--size];
+                    sift_down(heap, size, b, blocks);
+                }
+                distinct[range] = count;
+            });
+        }
+
+        round.await("Statistics");
+        int sum = 0;
+        for (int count : distinct)
+            sum += count;
+        return sum;
+    }
+
+    static int lower_bound(long [] a, int from, int to, long key) {
+        while (from < to) {
+            int mid = (from + to) >>> 1;
+            if (a[mid] < key)
+                from = mid + 1;
+            else
+                to = mid;
+        }
+        return from;
+    }
+
+    // a min-heap of blocks in heap[0, size), ordered by the hash at their position heap[blocks + block]
+    static void sift_up(int [] heap, int i, int b, int blocks) {
+        long key = program_hashes[heap[blocks + b]];
+        while (i > 0 && program_hashes[heap[blocks + heap[(i - 1) / 2]]] > key) {
+            heap[i] = heap[(i - 1) / 2];
+            i = (i - 1) / 2;
+        }
+        heap[i] = b;
+    }
+
+    static void sift_down(int [] heap, int size, int b, int blocks) {
+        if (size == 0)
+            return;
+        long key = program_hashes[heap[blocks + b]];
+        int i = 0;
+        for (int child; (child = 2 * i + 1) < size; i = child) {
+            if (child + 1 < size
+                    && program_hashes[heap[blocks + heap[child + 1]]] < program_hashes[heap[blocks + heap[child]]])
+                child ++;
+            if (program_hashes[heap[blocks + heap[child]]] >= key)
+                break;
+            heap[i] = heap[child];
+        }
+        heap[i] = b;
+    }
+
+    static long program_hash(char[] prog, int len) {
+        long h = len;
+        for (int i = 0; i < len; i++)
+            h = Long.rotateLeft((h ^ prog[i]) * 0x9E3779B97F4A7C15L, 27);
+        return mix_seed(h);
+    }
+
+    // a double of an NDJSON record as Double.toString prints it, null if it's infinite or NaN, which JSON has no
+    // numbers for
+    static StringBuilder json(StringBuilder out, double value) {
+        return Double.isFinite(value) ? out.append(value) : out.append("null");
+    }
+
+    void stats(double [] fitness, char [][] pop, int gen) {
+        int i, best = rd.nextInt(POPSIZE);
+        int rejected_count = 0;
+        long node_count = 0;
+        fbestpop = fitness[best];
+        favgpop = 0.0;
+
+        reduce(fitness, pop);
+        for ( i = 0; i < block_best.length; i ++ ) {  // the first best one, unless the random one is as good
+            node_count += block_nodes[i];
+            rejected_count += block_rejected[i];
+            favgpop += block_sum[i];
+            if ( block_best[i] >= 0 && block_fitness[i] > fbestpop ) {
+                best = block_best[i];
+                fbestpop = block_fitness[i];
+            }
+        }
+        best_index = best;
+        avg_len = (double) node_count / POPSIZE;
+        char [] best_program = POPULATION_ARENA ? arena.program(best) : pop[best];
+        favgpop /= Math.max(1, POPSIZE - rejected_count);
+
+        hist.add(new Hist(
+                gen,
+                -favgpop,
+                -fbestpop,
+                avg_len,
+                best_program
+        ));
+
+        if (OUTPUT == OUTPUT_NDJSON) {
+            record.setLength(0);
+            json(record.append("{\"gen\":").append(gen).append(",\"avg_fitness\":"), -favgpop);
+            json(record.append(",\"best_fitness\":"), -fbestpop);
+            json(record.append(",\"avg_size\":"), avg_len).append(",\"best\":[");
+            Hist.tokens(record, best_program, ',');
+            console.print(record.append("]}\n"));
+        }
+        console.print("Generation="+gen+" Avg Fitness="+(-favgpop)+
+                " Best Fitness="+(-fbestpop)+" Avg Size="+avg_len+"\n");
+        if (PRINT_BEST) {
+            expression.setLength(0);
+            render(best_program, 0, expression.append("Best Individual: "));
+            console.print(expression.append('\n'));
+        }
+        int distinct = distinct_programs();
+        console.print("Diversity: distinct programs=" + distinct
+                + " (" + df.format(100.0 * distinct / POPSIZE) + "%)\n");
+        if (FITNESS_CACHE_SIZE > 0) {
+            long hits = fitness_cache.hits.sumThenReset();
+            long misses = fitness_cache.misses.sumThenReset();
+            console.print("Fitness Cache: hits=" + hits + " misses=" + misses
+                    + " hit rate=" + df.format(100.0 * hits / Math.max(1, hits + misses)) + "%\n");
+        }
+        if (COMPILE_THRESHOLD > 0)
+            console.print("Compiled Programs: compilations=" + ProgramCompiler.compilations.sumThenReset() + "\n");
+        if (ALGEBRAIC_SIMPLIFICATION) {
+            long read = nodes_read.sumThenReset();
+            console.print("Simplification: nodes evaluated=" + df.format(100.0 * nodes_kept.sumThenReset() / Math.max(1, read))
+                    + "% of " + read + "\n");
+        }
+        if (COMMON_SUBEXPRESSIONS && EVALUATOR != EVAL_CLOSURE) {
+            long nodes = dag_nodes.sumThenReset();
+            long unique = dag_unique.sumThenReset();
+            console.print("Common Subexpressions: nodes=" + nodes + " unique=" + unique
+                    + " (" + df.format(100.0 * unique / Math.max(1, nodes)) + "%)\n");
+        }
+        if (SUPERINSTRUCTIONS && EVALUATOR == EVAL_STACK) {
+            console.print("Superinstructions: instructions=" + instructions.sumThenReset());
+            for (int k = 0; k < superinstructions.length; k++)
+                console.print(" " + SUPERINSTRUCTION_NAMES[k] + "=" + superinstructions[k].sumThenReset());
+            console.print("\n");
+        }
+        if (subtree_cache != null) {
+            console.print("Subtree Cache: entries=" + subtree_cache.entries.size()
+                    + " bytes=" + subtree_cache.bytes
+                    + " hits=" + subtree_cache.hits.sumThenReset()
+                    + " node evaluations saved=" + subtree_cache.saved.sumThenReset() + "\n");
+            subtree_cache.age();
+        }
+        if (INIT_UNIQUE && gen == 0)
+            console.print("Initialization: duplicates redrawn=" + redrawn.sum() + "\n");
+        if (PARSIMONY == TARPEIAN)
+            console.print("Tarpeian: killed=" + killed.sumThenReset() + "\n");
+        if (POPULATION_ARENA) {
+            console.print("Population Arena: chars=" + arena.live() + " chunks=" + arena.chunks.length
+                    + " off-heap=" + df.format(arena.capacity() * 2.0 / (1 << 20)) + "MB\n");
+        }
+        if (REJECTION_PERCENTILE > 0) {
+            long total = cases_total.sumThenReset();
+            long skipped = cases_skipped.sumThenReset();
+            console.print("Early Abort: threshold=" + rejection_threshold + " rejected=" + rejected.sumThenReset()
+                    + " in population=" + rejected_count
+                    + " case evaluations saved=" + df.format(100.0 * skipped / Math.max(1, total)) + "%\n");
+            rejection_threshold = rejection_threshold(fitness);
+            if (CASE_ORDERING)
+                order_cases(fitness, pop);
+        }
+        console.flush();
+    }
+
+    int tournament( double [] fitness, int tsize, RandomGenerator rd ) {  // select the best individual
+        if (PARSIMONY == DOUBLE_TOURNAMENT) {  // the shorter of two winners, with probability PARSIMONY_PRESSURE
+            int first = best_of(fitness, tsize, rd), second = best_of(fitness, tsize, rd);
+            boolean shorter = program_length(first) <= program_length(second);
+            return shorter == (rd.nextDouble() < PARSIMONY_PRESSURE) ? first : second;
+        }
+        return best_of(fitness, tsize, rd);
+    }
+
+    int best_of( double [] fitness, int tsize, RandomGenerator rd ) {
+        int best = rd.nextInt(POPSIZE), i, competitor;
+        double  fbest = -1.0e34;
+
+        for ( i = 0; i < tsize; i ++ ) {
+            competitor = rd.nextInt(POPSIZE);
+            if ( fitness[competitor] > fbest ) {
+                fbest = fitness[competitor];
+                best = competitor;
+            }
+        }
+        return( best );
+    }
+
+    int negative_tournament( double [] fitness, int tsize, int from, int to, RandomGenerator rd ) {  // select the worst individual in [from, to)
+        if (PARSIMONY == DOUBLE_TOURNAMENT) {  // the longer of two losers, with probability PARSIMONY_PRESSURE
+            int first = worst_of(fitness, tsize, from, to, rd), second = worst_of(fitness, tsize, from, to, rd);
+            boolean longer = program_length(first) >= program_length(second);
+            return longer == (rd.nextDouble() < PARSIMONY_PRESSURE) ? first : second;
+        }
+        return worst_of(fitness, tsize, from, to, rd);
+    }
+
+    int worst_of( double [] fitness, int tsize, int from, int to, RandomGenerator rd ) {
+        int worst = from + rd.nextInt(to - from), i, competitor;
+        double fworst = 1e34;
+
+        for ( i = 0; i < tsize; i ++ ) {
+            competitor = from + rd.nextInt(to - from);
+            if ( fitness[competitor] < fworst ) {
+                fworst = fitness[competitor];
+                worst = competitor;
+            }
+        }
+        return( worst );
+    }
+
+    static long begin_read(int slot) {
+        long stamp;
+        while (((stamp = (long) STAMP.getAcquire(stamps, slot)) & 1) != 0)
+            Thread.onSpinWait();  // the owner is replacing the slot
+        return stamp;
+    }
+
+    static boolean end_read(int slot, long stamp) {
+        VarHandle.loadLoadFence();
+        return (long) STAMP.getOpaque(stamps, slot) == stamp;
+    }
+
+    static void write_slot(int slot, char [] program, double fit) {  // only called by the owner of the slot
+        long stamp = (long) STAMP.getOpaque(stamps, slot);
+        STAMP.setOpaque(stamps, slot, stamp + 1);
+        VarHandle.storeStoreFence();
+        PROGRAM.setOpaque(population, slot, program);
+        FITNESS.setOpaque(fitness, slot, fit);
+        STAMP.setRelease(stamps, slot, stamp + 2);
+    }
+
+    static void write_slot(int slot, long address, int length, double fit) {  // arena version of write_slot
+        long stamp = (long) STAMP.getOpaque(stamps, slot);
+        STAMP.setOpaque(stamps, slot, stamp + 1);
+        VarHandle.storeStoreFence();
+        arena.set(slot, address, length);
+        FITNESS.setOpaque(fitness, slot, fit);
+        STAMP.setRelease(stamps, slot, stamp + 2);
+    }
+
+    // of the current generation, or of a slot owned by the calling worker in steady state
+    static int program_length(int slot) {
+        return POPULATION_ARENA ? arena.length(slot) : population[slot].length;
+    }
+
+    static void load_parent(int slot, int k, EvaluationContext ctx) {  // from the read-only current generation
+        if (POPULATION_ARENA) {
+            arena.load(slot, k, ctx);
+        } else {
+            ctx.parents[k] = population[slot];
+            ctx.parent_lengths[k] = population[slot].length;
+        }
+    }
+
+    // tournament over stamped slots, the winner's program becomes parent k of ctx; with DOUBLE_TOURNAMENT it's
+    // the shorter of two winners as in tournament, their lengths read under the stamps their fitness was read under
+    void select_parent( int tsize, int k, EvaluationContext ctx, RandomGenerator rd ) {
+        while (true) {
+            int best = stamped_best_of(tsize, ctx, rd);
+            long best_stamp = ctx.winner_stamp;
+            if (best < 0)
+                continue;
+            if (PARSIMONY == DOUBLE_TOURNAMENT) {
+                int second = stamped_best_of(tsize, ctx, rd);
+                long second_stamp = ctx.winner_stamp;
+                if (second < 0)
+                    continue;
+                int len1 = stamped_length(best), len2 = stamped_length(second);
+                if (!end_read(best, best_stamp) || !end_read(second, second_stamp))
+                    continue;  // a length of the program replacing it
+                if ((len1 <= len2) != (rd.nextDouble() < PARSIMONY_PRESSURE)) {
+                    best = second;
+                    best_stamp = second_stamp;
+                }
+            }
+            if (POPULATION_ARENA) {
+                if (arena.load(best, k, ctx) && end_read(best, best_stamp))  // still the program the fitness belongs to
+                    return;
+                continue;
+            }
+            char [] program = (char []) PROGRAM.getOpaque(population, best);
+            if (end_read(best, best_stamp)) {
+                ctx.parents[k] = program;
+                ctx.parent_lengths[k] = program.length;
+                return;
+            }
+        }
+    }
+
+    // best_of over stamped slots: the winner with its stamp in ctx.winner_stamp, or -1 if a slot was being replaced
+    int stamped_best_of( int tsize, EvaluationContext ctx, RandomGenerator rd ) {
+        int best = rd.nextInt(POPSIZE), i, competitor;
+        long best_stamp = begin_read(best), stamp;
+        double fbest = -1.0e34, f;
+
+        for ( i = 0; i < tsize; i ++ ) {
+            competitor = rd.nextInt(POPSIZE);
+            stamp = begin_read(competitor);
+            f = (double) FITNESS.getOpaque(fitness, competitor);
+            if (!end_read(competitor, stamp))
+                return( -1 );
+            if ( f > fbest ) {
+                fbest = f;
+                best = competitor;
+                best_stamp = stamp;
+            }
+        }
+        ctx.winner_stamp = best_stamp;
+        return( best );
+    }
+
+    static int stamped_length(int slot) {  // only valid if end_read then confirms the slot's stamp
+        return POPULATION_ARENA ? arena.length(slot) : ((char []) PROGRAM.getOpaque(population, slot)).length;
+    }
+
+    // ends1 and ends2 are the subtree ends of the parents, offspring and depths need room for len1 + len2
+    int crossover( char []parent1, int len1, int [] ends1, char [] parent2, int len2, int [] ends2,
+                   char [] offspring, int [] depths, RandomGenerator rd ) {
+        int xo1start, xo1end, xo2start, xo2end;
+        int lenoff;
+
+        for (int attempt = 1; ; attempt ++) {
+            xo1start =  rd.nextInt(len1);
+            xo1end = ends1[xo1start];
+
+            xo2start =  rd.nextInt(len2);
+            xo2end = ends2[xo2start];
+
+            lenoff = xo1start + (xo2end - xo2start) + (len1-xo1end);
+            boolean fits = MAX_NODES <= 0 || lenoff <= MAX_NODES;  // known before anything is copied
+
+            if (fits) {
+                System.arraycopy( parent1, 0, offspring, 0, xo1start );
+                System.arraycopy( parent2, xo2start, offspring, xo1start,
+                        (xo2end - xo2start) );
+                System.arraycopy( parent1, xo1end, offspring,
+                        xo1start + (xo2end - xo2start),
+                        (len1-xo1end) );
+                fits = MAX_DEPTH <= 0 || tree_depth(offspring, lenoff, depths) <= MAX_DEPTH;
+            }
+            if (fits)
+                return( lenoff );
+            if (attempt == CROSSOVER_ATTEMPTS) {  // nothing fit, the first parent is passed on unchanged
+                System.arraycopy( parent1, 0, offspring, 0, len1 );
+                return( len1 );
+            }
+        }
+    }
+
+    // point mutation keeps every token's arity, so the offspring has its parent's size and depth
+    int mutation( char [] parent, int len, double pmut, char [] parentcopy, RandomGenerator rd ) {
+        int i;
+        int mutsite;
+
+        System.arraycopy( parent, 0, parentcopy, 0, len );
+        for (i = 0; i < len; i ++ ) {
+            if ( rd.nextDouble() < pmut ) {
+                mutsite =  i;
+                switch (ARITY[parentcopy[mutsite]]) {
+                    case 0 -> parentcopy[mutsite] = (char) rd.nextInt(varnumber+randomnumber);
+                    case 2 -> parentcopy[mutsite] = BINARY[rd.nextInt(BINARY.length)];
+                    case 1 -> parentcopy[mutsite] = UNARY[rd.nextInt(UNARY.length)];
+                }
+            }
+        }
+        return( len );
+    }
+
+    void print_params() {
+        console.print("-- TINY GP (Java version) --\n");
+        console.print("SEED="+seed+"\nMAX_LEN="+MAX_LEN+
+                "\nPOPSIZE="+POPSIZE+"\nDEPTH="+DEPTH+
+                "\nCROSSOVER_PROB="+CROSSOVER_PROB+
+                "\nPMUT_PER_NODE="+PMUT_PER_NODE+
+                "\nMIN_RANDOM="+minrandom+
+                "\nMAX_RANDOM="+maxrandom+
+                "\nGENERATIONS="+GENERATIONS+
+                "\nTSIZE="+TSIZE+
+                "\nEVALUATOR="+EVALUATOR+
+                "\nKERNELS="+kernels.getClass().getSimpleName()+
+                "\nCOMPILE_THRESHOLD="+COMPILE_THRESHOLD+
+                "\nRNG_STREAMS="+RNG_STREAMS+
+                "\nREPLACEMENT="+REPLACEMENT+
+                "\nMAX_NODES="+MAX_NODES+
+                "\nMAX_DEPTH="+MAX_DEPTH+
+                "\nPARSIMONY="+PARSIMONY+
+                "\nPARSIMONY_PRESSURE="+PARSIMONY_PRESSURE+
+                "\nALGEBRAIC_SIMPLIFICATION="+ALGEBRAIC_SIMPLIFICATION+
+                "\nCOMMON_SUBEXPRESSIONS="+COMMON_SUBEXPRESSIONS+
+                "\nSUPERINSTRUCTIONS="+SUPERINSTRUCTIONS+
+                "\nFITNESS_CACHE_SIZE="+FITNESS_CACHE_SIZE+
+                "\nPOPULATION_ARENA="+POPULATION_ARENA+
+                "\nSUBTREE_CACHE_MB="+SUBTREE_CACHE_MB+
+
+                "\nINIT_METHOD="+INIT_METHOD+
+                "\nMIN_DEPTH="+MIN_DEPTH+
+                "\nINIT_UNIQUE="+INIT_UNIQUE+
+                "\nPRINT_BEST="+PRINT_BEST+
+                "\nOUTPUT="+OUTPUT+
+                "\nREJECTION_PERCENTILE="+REJECTION_PERCENTILE+
+                "\nCASE_ORDERING="+CASE_ORDERING+
+                "\n----------------------------------\n");
+    }
+
+    public static List<Hist> hist = new ArrayList<>();
+
+    static final DecimalFormat df = new DecimalFormat("0.00");
+    void evolve() {
+        setup();
+        int gen;
+        print_params();
+        if (OUTPUT == OUTPUT_NDJSON) {
+            record.setLength(0);
+            record.append("{\"constants\":[");
+            for (int i = 0; i < FSET_START; i ++)
+                json(record.append(i == 0 ? "" : ","), x[i]);
+            console.print(record.append("]}\n"));
+        }
+        stats( fitness, population, 0 );
+        long firstStartTime = System.nanoTime();
+        long startTime;
+        long time;
+
+        for ( gen = 1; gen < GENERATIONS; gen ++ ) {
+            if (  fbestpop > -goal_fitness ) {
+                time = System.nanoTime() - firstStartTime;
+                int sec = (int) (time / 1_000_000_000.0);
+                int min = sec / 60;
+                sec = sec % 60;
+                console.println("Took: " + min + "min " + sec + "s");
+                console.print("PROBLEM SOLVED\n");
+                return;
+            }
+
+            startTime = System.nanoTime();
+
+            int chunkSize = (int) Math.ceil((double) POPSIZE / NUM_THREADS);
+            Round round = new Round(NUM_THREADS);
+
+            for (int t = 0; t < NUM_THREADS; t++) {
+                int start = t * chunkSize;
+                int end = Math.min(start + chunkSize, POPSIZE);
+
+                int finalT = t;
+                long finalStartTime = startTime;
+                int updateInterval = Math.max(1, (end - start) / 100);
+                long generation_seed = individual_seed + (long) gen * POPSIZE;
+                SplittableRandom worker_rd = streams.split();  // split here, so the streams don't depend on scheduling
+                round.submit(() -> {
+                    EvaluationContext ctx = new EvaluationContext();
+                    ctx.variables = new double[variables.length];
+                    PopulationArena.Allocator allocator = POPULATION_ARENA
+                            ? (REPLACEMENT == GENERATIONAL ? next_arena : arena).allocator()
+                            : null;
+
+                    for (int i = start; i < end; i++) {
+                        int length;
+                        double newfit;
+                        RandomGenerator rd = RNG_STREAMS == RNG_PER_INDIVIDUAL
+                                ? new SplittableRandom(mix_seed(generation_seed + i))
+                                : worker_rd;
+
+                        if (REPLACEMENT == GENERATIONAL && i == best_index) {  // elitism, the best one survives
+                            if (POPULATION_ARENA) {
+                                arena.load(i, 0, ctx);
+                                length = ctx.parent_lengths[0];
+                                next_arena.set(i, allocator.put(ctx.parents[0], length), length);
+                            } else {
+                                next_population[i] = population[i];
+                            }
+                            next_fitness[i] = fitness[i];
+                            continue;
+                        }
+
+                        if (REPLACEMENT == GENERATIONAL) {  // the current generation is read-only
+                            if (rd.nextDouble() < CROSSOVER_PROB) {
+                                load_parent(tournament(fitness, TSIZE, rd), 0, ctx);
+                                load_parent(tournament(fitness, TSIZE, rd), 1, ctx);
+                            } else {
+                                load_parent(tournament(fitness, TSIZE, rd), 0, ctx);
+                                ctx.parent_lengths[1] = -1;
+                            }
+                        } else {
+                            if (rd.nextDouble() < CROSSOVER_PROB) {
+                                select_parent(TSIZE, 0, ctx, rd);
+                                select_parent(TSIZE, 1, ctx, rd);
+                            } else {
+                                select_parent(TSIZE, 0, ctx, rd);
+                                ctx.parent_lengths[1] = -1;
+                            }
+                        }
+                        int len1 = ctx.parent_lengths[0], len2 = ctx.parent_lengths[1];
+                        if (len2 >= 0)
+                            length = crossover(ctx.parents[0], len1, ctx.subtree_ends(0),
+                                    ctx.parents[1], len2, ctx.subtree_ends(1),
+                                    ctx.offspring(len1 + len2), ctx.depths(len1 + len2), rd);
+                        else
+                            length = mutation(ctx.parents[0], len1, PMUT_PER_NODE, ctx.offspring(len1), rd);
+
+                        if (PARSIMONY == TARPEIAN && length > avg_len && rd.nextDouble() < PARSIMONY_PRESSURE) {
+                            newfit = REJECTED;  // killed, the evaluation is saved
+                            killed.increment();
+                        } else {
+                            newfit = fitness_function(ctx.offspring, length, ctx);
+                        }
+
+                        if (POPULATION_ARENA) {  // the offspring is copied into the arena, nothing is left to collect
+                            long address = allocator.put(ctx.offspring, length);
+                            if (REPLACEMENT == GENERATIONAL) {
+                                next_arena.set(i, address, length);
+                                next_fitness[i] = newfit;
+                            } else {
+                                int offspring = negative_tournament(fitness, TSIZE, start, end, rd);
+                                write_slot(offspring, address, length, newfit);
+                            }
+                        } else {
+                            char[] newind = Arrays.copyOf(ctx.offspring, length);
+                            if (REPLACEMENT == GENERATIONAL) {
+                                next_population[i] = newind;
+                                next_fitness[i] = newfit;
+                            } else {
+                                int offspring = negative_tournament(fitness, TSIZE, start, end, rd);
+                                write_slot(offspring, newind, newfit);
+                            }
+                        }
+
+                        if (i % updateInterval == 0 && finalT == 0) { // print progress only from one thread
+                            long timeThread = System.nanoTime() - finalStartTime;
+                            int progress = Math.min(100, (i / updateInterval) + 1);
+                            console.println("[" + "■".repeat(progress)
+                                    + " ".repeat(100 - progress) + "] "
+                                    + progress + "%  "
+                                    + df.format(timeThread / 1_000_000_000.0) + "s\\r");
+                        }
+                    }
+                });
+            }
+
+            round.await("Evolution");
+
+            if (REPLACEMENT == GENERATIONAL) {
+                char[][] previous_population = population;
+                double[] previous_fitness = fitness;
+                population = next_population;
+                fitness = next_fitness;
+                next_population = previous_population;
+                next_fitness = previous_fitness;
+                if (POPULATION_ARENA) {
+                    PopulationArena previous_arena = arena;
+                    arena = next_arena;
+                    next_arena = previous_arena;
+                    next_arena.clear();  // none of its programs are alive any more
+                }
+            } else if (POPULATION_ARENA) {
+                arena.compact();
+            }
+
+            console.println();
+            stats( fitness, population, gen );
+        }
+        time = System.nanoTime() - firstStartTime;
+        int sec = (int) (time / 1_000_000_000.0);
+        int min = sec / 60;
+        sec = sec % 60;
+        console.println("Took: " + min + "min " + sec + "s");
+        console.print("PROBLEM *NOT* SOLVED\n");
+    }
+
+    static long mix_seed(long z) {  // spreads consecutive indices over the whole seed space (SplitMix64 finalizer)
+        z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+        z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+        return z ^ (z >>> 31);
+    }
+
+    public void setup() {
+        fitness =  new double[POPSIZE];
+        if (REPLACEMENT == GENERATIONAL) {
+            next_fitness = new double[POPSIZE];
+            if (POPULATION_ARENA)
+                next_arena = new PopulationArena(POPSIZE);
+            else
+                next_population = new char[POPSIZE][];
+        } else {
+            stamps = new long[POPSIZE];
+        }
+        if (seed >= 0) {
+            rd.setSeed(seed);
+            streams = new SplittableRandom(seed);
+        } else {
+            streams = new SplittableRandom();
+        }
+        individual_seed = streams.nextLong();
+
+        if (varnumber + randomnumber >= FSET_START )
+            console.println("too many variables and constants");
+
+        for (int i = 0; i < FSET_START; i ++)
+            x[i]= (maxrandom-minrandom)*rd.nextDouble()+minrandom;
+        variables = new double[varnumber];
+        if (POPULATION_ARENA)
+            arena = new PopulationArena(POPSIZE);
+        population = create_random_pop(POPSIZE, DEPTH, fitness);
+    }
+
+    public static double[] getX() {
+        return TinyGP.x;
+    }
+
+    public static List<Hist> getHist() {
+        return TinyGP.hist;
+    }
+
+    // forgets what a previous run in this JVM left behind, results only depend on the settings and the seed
+    static void reset() {
+        hist.clear();
+        rejection_threshold = Double.POSITIVE_INFINITY;
+        for (LongAdder counter : new LongAdder[]{killed, nodes_read, nodes_kept, dag_nodes, dag_unique, instructions,
+                cases_total, cases_skipped, rejected, redrawn})
+            counter.reset();
+        for (LongAdder counter : superinstructions)
+            counter.reset();
+        if (fitness_cache != null)
+            fitness_cache.reset();
+        if (subtree_cache != null)
+            subtree_cache.reset();
+        if (COMPILE_THRESHOLD > 0)
+            ProgramCompiler.reset();
+    }
+
+    public TinyGP() {
+        console.println("Server started");
+
+        reset();
+        loadTargets();
+
+        this.evolve();
+        if (OUTPUT == OUTPUT_NDJSON)
+            return;
+        console.println("TOKEN");
+        for (double v : TinyGP.x) {
+            console.print(Double.toString(v) + " ");
+        }
+        console.println();
+        for (Hist h : TinyGP.hist) {
+            console.println(h);
+        }
+    }
+
+    public static void main(String[] args) {
+        System.setOut(new PrintStream(System.out, true, StandardCharsets.UTF_8));
+        console = System.out;
+        try {
+            new TinyGP();
+        } catch (IllegalArgumentException e) {
+            System.err.println("ERROR: " + e.getMessage());
+            System.exit(1);
+        }
+    }
+}
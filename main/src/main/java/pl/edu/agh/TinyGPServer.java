@@ -0,0 +1,215 @@
+package pl.edu.agh;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.io.StringReader;
+import java.lang.reflect.Field;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.Properties;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Long-lived engine process for repeated fits: jobs come over a local socket, one per connection, and run on
+// engines kept warm between them. TinyGP reads its settings into static finals, so an engine is TinyGP loaded
+// with one set of settings in a class loader of its own; a job reuses an idle engine loaded with the same ones
+// (seed and data file aside), keeping its JIT-compiled code, its worker threads and its compiled programs.
+// Jobs with other settings, or with the same ones while that engine is busy, load another engine and run
+// alongside. At most ENGINES idle engines are kept, the least recently used one is dropped.
+//
+// Protocol, UTF-8 lines: the client sends the settings of the job as properties (as in the file -Dtinygp.config
+// names) ended by an empty line. The server streams back what the run prints, as the TinyGP process prints it,
+// then END, or ERROR and a message if the job failed.
+public class TinyGPServer {
+    static final int JOBS = Integer.getInteger("tinygp.jobs", 2);  // jobs running at the same time, the others wait
+    static final int ENGINES = Integer.getInteger("tinygp.engines", 4);  // idle engines kept warm
+
+    static final class Engine {
+        final String key;
+        final URLClassLoader loader;
+        final Class<?> engine;
+
+        Engine(String key, URLClassLoader loader, Class<?> engine) {
+            this.key = key;
+            this.loader = loader;
+            this.engine = engine;
+        }
+    }
+
+    final ServerSocket socket;
+    final ExecutorService jobs = Executors.newFixedThreadPool(JOBS, task -> {
+        Thread job = new Thread(task);
+        job.setDaemon(true);
+        return job;
+    });
+    final ArrayDeque<Engine> idle = new ArrayDeque<>();  // guarded by itself, least recently used first
+    final AtomicInteger loaded = new AtomicInteger(), reused = new AtomicInteger();
+    final URL classes = TinyGPServer.class.getProtectionDomain().getCodeSource().getLocation();
+
+    TinyGPServer(int port) throws IOException {
+        socket = new ServerSocket(port, 50, InetAddress.getLoopbackAddress());
+    }
+
+    int port() {
+        return socket.getLocalPort();
+    }
+
+    void serve() {
+        try {
+            while (true) {
+                Socket client = socket.accept();
+                jobs.execute(() -> handle(client));
+            }
+        } catch (IOException e) {
+            if (!socket.isClosed())
+                System.err.println("ERROR: " + e.getMessage());
+        }
+    }
+
+    void close() throws IOException {
+        socket.close();
+        jobs.shutdownNow();
+        synchronized (idle) {
+            for (Engine engine : idle)
+                unload(engine);
+            idle.clear();
+        }
+    }
+
+    void handle(Socket client) {
+        try (client;
+             BufferedReader in = new BufferedReader(new InputStreamReader(client.getInputStream(), StandardCharsets.UTF_8));
+             PrintStream out = new PrintStream(client.getOutputStream(), true, StandardCharsets.UTF_8)) {
+            StringBuilder text = new StringBuilder();
+            for (String line = in.readLine(); line != null && !line.isEmpty(); line = in.readLine())
+                text.append(line).append('\n');
+            Properties job = new Properties();
+            job.load(new StringReader(text.toString()));
+            try {
+                run(job, out);
+                out.println("END");
+            } catch (Throwable e) {  // the job failed, not the server; an engine that threw isn't reused
+                out.println("ERROR " + (e.getMessage() != null ? e.getMessage() : e));
+            }
+        } catch (IOException e) {
+            // the client is gone, nobody to tell
+        }
+    }
+
+    // runs the job on an idle engine loaded with its settings, or on a new one
+    void run(Properties job, PrintStream out) {
+        Properties settings = new Properties();
+        settings.putAll(job);
+        settings.remove("seed");
+        settings.remove("file");
+        String key = new TreeMap<>(settings).toString();
+        Engine engine = checkout(key);
+        if (engine == null)
+            engine = load(key, job);
+        boolean healthy = false;
+        try {
+            set(engine, "console", out);
+            set(engine, "seed", Long.parseLong(job.getProperty("seed", "-1").trim()));
+            set(engine, "file", job.getProperty("file", "targets.dat").trim());
+            try {
+                engine.engine.getConstructor().newInstance();
+                healthy = true;
+            } catch (InvocationTargetException e) {
+                Throwable cause = e.getCause();
+                healthy = cause instanceof IllegalArgumentException;  // bad data, the engine is fine
+                throw new IllegalStateException(cause.getMessage() != null ? cause.getMessage() : cause.toString(), cause);
+            } catch (ReflectiveOperationException e) {
+                throw new IllegalStateException(e);
+            }
+        } finally {
+            if (healthy)
+                checkin(engine);
+            else
+                unload(engine);
+        }
+    }
+
+    Engine checkout(String key) {
+        synchronized (idle) {
+            for (Iterator<Engine> it = idle.descendingIterator(); it.hasNext(); ) {
+                Engine engine = it.next();
+                if (engine.key.equals(key)) {
+                    it.remove();
+                    reused.incrementAndGet();
+                    return engine;
+                }
+            }
+        }
+        return null;
+    }
+
+    void checkin(Engine engine) {
+        Engine evicted = null;
+        synchronized (idle) {
+            idle.addLast(engine);
+            if (idle.size() > ENGINES)
+                evicted = idle.removeFirst();
+        }
+        if (evicted != null)
+            unload(evicted);
+    }
+
+    Engine load(String key, Properties job) {
+        URLClassLoader loader = new URLClassLoader(new URL[]{classes}, ClassLoader.getPlatformClassLoader());
+        try {
+            Method configure = Class.forName(Config.class.getName(), true, loader).getDeclaredMethod("configure", Properties.class);
+            configure.setAccessible(true);
+            configure.invoke(null, job);
+            Class<?> engine = Class.forName(TinyGP.class.getName(), true, loader);
+            loaded.incrementAndGet();
+            return new Engine(key, loader, engine);
+        } catch (InvocationTargetException e) {
+            throw new IllegalStateException(String.valueOf(e.getCause().getMessage()), e.getCause());
+        } catch (ExceptionInInitializerError e) {  // a bad setting of the job
+            throw new IllegalStateException("Cannot load the engine: " + e.getCause().getMessage(), e.getCause());
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("Cannot load the engine: " + e, e);
+        }
+    }
+
+    static void unload(Engine engine) {
+        try {
+            Field executor = engine.engine.getDeclaredField("executor");
+            executor.setAccessible(true);
+            ((ExecutorService) executor.get(null)).shutdownNow();
+            engine.loader.close();
+        } catch (ReflectiveOperationException | IOException e) {
+            // unreachable once nothing refers to it
+        }
+    }
+
+    static void set(Engine engine, String name, Object value) {
+        try {
+            Field field = engine.engine.getDeclaredField(name);
+            field.setAccessible(true);
+            field.set(null, value);
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    // java -cp main/target/classes pl.edu.agh.TinyGPServer [port], port 0 picks a free one, printed once listening
+    public static void main(String[] args) throws IOException {
+        System.setOut(new PrintStream(System.out, true, StandardCharsets.UTF_8));
+        TinyGPServer server = new TinyGPServer(args.length > 0 ? Integer.parseInt(args[0]) : 0);
+        System.out.println("Listening on " + server.port());
+        server.serve();
+    }
+}
@@ -14,6 +14,7 @@ import java.text.DecimalFormat;
 public class tiny_gp {
     double [] fitness;
     char [][] pop;
+    int [][] ends;  // subtree ends of pop[i], indexed the first time it's a crossover parent
     static Random rd = new Random();
     static final int
             ADD = 110,
@@ -22,6 +23,11 @@ public class tiny_gp {
             DIV = 113,
             FSET_START = ADD,
             FSET_END = DIV;
+    static final byte [] ARITY = new byte[FSET_END + 1];  // arguments of every token, 0 for terminals
+    static {
+        for (int op = FSET_START; op <= FSET_END; op ++)
+            ARITY[op] = 2;
+    }
     static double [] x = new double[FSET_START];
     static double minrandom, maxrandom;
     static char [] program;
@@ -74,6 +80,17 @@ public class tiny_gp {
         return( 0 ); // should never get here
     }
 
+    int [] subtree_ends( int i ) {  // ends[i][j] is the end of the subtree starting at j in pop[i]
+        if ( ends[i] == null ) {
+            char [] buffer = pop[i];
+            int [] end = new int[buffer.length];
+            for ( int j = buffer.length - 1; j >= 0; j -- )  // children end before their parents
+                end[j] = ARITY[buffer[j]] == 0 ? j + 1 : end[end[j + 1]];
+            ends[i] = end;
+        }
+        return( ends[i] );
+    }
+
     void setup_fitness(String fname) {
         try {
             int i,j;
@@ -274,18 +291,18 @@ public class tiny_gp {
         return( worst );
     }
 
-    char [] crossover( char []parent1, char [] parent2 ) {
+    char [] crossover( char []parent1, int [] ends1, char [] parent2, int [] ends2 ) {
         int xo1start, xo1end, xo2start, xo2end;
         char [] offspring;
-        int len1 = traverse( parent1, 0 );
-        int len2 = traverse( parent2, 0 );
+        int len1 = ends1[0];
+        int len2 = ends2[0];
         int lenoff;
 
         xo1start =  rd.nextInt(len1);
-        xo1end = traverse( parent1, xo1start );
+        xo1end = ends1[xo1start];
 
         xo2start =  rd.nextInt(len2);
-        xo2end = traverse( parent2, xo2start );
+        xo2end = ends2[xo2start];
 
         lenoff = xo1start + (xo2end - xo2start) + (len1-xo1end);
 
@@ -302,7 +319,7 @@ public class tiny_gp {
     }
 
     char [] mutation( char [] parent, double pmut ) {
-        int len = traverse( parent, 0 ), i;
+        int len = parent.length, i;
         int mutsite;
         char [] parentcopy = new char [len];
 
@@ -310,18 +327,12 @@ public class tiny_gp {
         for (i = 0; i < len; i ++ ) {
             if ( rd.nextDouble() < pmut ) {
                 mutsite =  i;
-                if ( parentcopy[mutsite] < FSET_START )
+                if ( ARITY[parentcopy[mutsite]] == 0 )
                     parentcopy[mutsite] = (char) rd.nextInt(varnumber+randomnumber);
-                else
-                    switch(parentcopy[mutsite]) {
-                        case ADD:
-                        case SUB:
-                        case MUL:
-                        case DIV:
-                            parentcopy[mutsite] =
-                                    (char) (rd.nextInt(FSET_END - FSET_START + 1)
-                                            + FSET_START);
-                    }
+                else if ( ARITY[parentcopy[mutsite]] == 2 )
+                    parentcopy[mutsite] =
+                            (char) (rd.nextInt(FSET_END - FSET_START + 1)
+                                    + FSET_START);
             }
         }
         return( parentcopy );
@@ -349,6 +360,7 @@ public class tiny_gp {
         for ( int i = 0; i < FSET_START; i ++ )
             x[i]= (maxrandom-minrandom)*rd.nextDouble()+minrandom;
         pop = create_random_pop(POPSIZE, DEPTH, fitness );
+        ends = new int[POPSIZE][];
     }
 
     void evolve() {
@@ -366,7 +378,8 @@ public class tiny_gp {
                 if ( rd.nextDouble() < CROSSOVER_PROB  ) {
                     parent1 = tournament( fitness, TSIZE );
                     parent2 = tournament( fitness, TSIZE );
-                    newind = crossover( pop[parent1],pop[parent2] );
+                    newind = crossover( pop[parent1], subtree_ends( parent1 ),
+                            pop[parent2], subtree_ends( parent2 ) );
                 }
                 else {
                     parent = tournament( fitness, TSIZE );
@@ -375,6 +388,7 @@ public class tiny_gp {
                 newfit = fitness_function( newind );
                 offspring = negative_tournament( fitness, TSIZE );
                 pop[offspring] = newind;
+                ends[offspring] = null;
                 fitness[offspring] = newfit;
             }
             stats( fitness, pop, gen );
@@ -0,0 +1,147 @@
+package pl.edu.agh;
+
+import junit.framework.TestCase;
+
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Rewritten programs must compute what the unrewritten ones did, be no longer,
+ * and programs equal up to commuted operands must be rewritten to the same tokens.
+ */
+public class AlgebraicSimplificationTest extends TestCase {
+    static final int VARNUMBER = 2;
+    static final int RANDOMNUMBER = 50;
+    static final int FITNESSCASES = 200;
+
+    TinyGPHarness rewriting, folding;
+
+    static TinyGP.EvaluationContext ctx;  // of the engine the static methods run in
+
+    @Override
+    protected void setUp() throws Exception {
+        rewriting = load(true);
+        folding = load(false);
+    }
+
+    static TinyGPHarness load(boolean rewrite) throws Exception {
+        Map<String, String> tags = TinyGPHarness.defaults(VARNUMBER, RANDOMNUMBER, FITNESSCASES);
+        tags.put("ALGEBRAIC_SIMPLIFICATION", String.valueOf(rewrite));
+        TinyGPHarness gp = TinyGPHarness.load(tags);
+        gp.run(AlgebraicSimplificationTest.class, "prepare");
+        return gp;
+    }
+
+    // the same constants in both engines, with a few that trigger the rules
+    static void prepare() throws Exception {
+        TinyGPHarness.loadRandomTargets(new Random(31), 2);
+        Random rd = new Random(29);
+        double[] special = {0.0, 1.0, -1.0, 0.0005};  // the last one is cut out as a denominator
+        for (int i = 0; i < TinyGP.x.length; i++)
+            TinyGP.x[i] = i >= VARNUMBER && i < VARNUMBER + special.length ? special[i - VARNUMBER] : rd.nextDouble() * 10 - 5;
+        ctx = TinyGPHarness.context();
+    }
+
+    public void testRewrittenProgramsMatchUnrewritten() throws Exception {
+        Random rd = new Random(37);
+        char[][] programs = new char[3000][];
+        for (int p = 0; p < programs.length; p++)
+            programs[p] = program(rd, 6);
+        double[][] rewritten = (double[][]) rewriting.run(AlgebraicSimplificationTest.class, "simplified", (Object) programs);
+        double[][] folded = (double[][]) folding.run(AlgebraicSimplificationTest.class, "simplified", (Object) programs);
+        int shorter = 0;
+        for (int p = 0; p < programs.length; p++) {
+            assertTrue(rewritten[0][p] <= folded[0][p]);
+            if (rewritten[0][p] < folded[0][p])
+                shorter++;
+
+            double expected = folded[1][p], actual = rewritten[1][p];
+            if (!Double.isFinite(expected) || Math.abs(expected) > 1e12)
+                continue;  // the rules only hold for finite values, and reassociation rounds relative to the magnitude
+            assertEquals("program " + p, expected, actual, 1e-9 * Math.max(1.0, Math.abs(expected)));
+        }
+        assertTrue(shorter > 300);
+    }
+
+    // the length of every program once simplified, and its fitness
+    static double[][] simplified(char[][] programs) {
+        double[][] results = new double[2][programs.length];
+        for (int p = 0; p < programs.length; p++) {
+            TinyGP.simplify(programs[p], ctx);
+            results[0][p] = ctx.length;
+            results[1][p] = TinyGP.stack_fitness(ctx);
+        }
+        return results;
+    }
+
+    public void testRulesOnKnownPrograms() throws Exception {
+        rewriting.run(AlgebraicSimplificationTest.class, "rulesOnKnownPrograms");
+    }
+
+    static void rulesOnKnownPrograms() {
+        // variables are tokens 0 and 1, constants 2, 3 and 4 are 0.0, 1.0 and -1.0
+        char a = 0, b = 1, zero = VARNUMBER, one = VARNUMBER + 1, minus_one = VARNUMBER + 2;
+        char add = 110, sub = 111, mul = 112, div = 113;
+        assertRewritesTo(new char[]{a}, add, a, zero);                      // x+0
+        assertRewritesTo(new char[]{a}, mul, one, a);                       // 1*x
+        assertRewritesTo(new char[]{a}, div, a, one);                       // x/1
+        assertRewritesTo(new char[]{zero}, sub, a, a);                      // x-x
+        assertRewritesTo(new char[]{zero}, mul, add, a, b, zero);           // (x+y)*0
+        assertRewritesTo(new char[]{zero}, div, zero, sub, a, b);           // 0/(x-y)
+        assertRewritesTo(new char[]{a}, add, add, a, one, minus_one);       // (x+1)+(-1)
+        assertRewritesTo(new char[]{a}, sub, add, one, a, one);             // (1+x)-1
+        assertRewritesTo(new char[]{a}, mul, minus_one, mul, a, minus_one); // -1*(x*-1)
+        assertRewritesTo(new char[]{sub, zero, a}, sub, one, add, a, one);  // 1-(x+1), there's no negation
+        assertRewritesTo(new char[]{div, a, a}, div, a, a);                 // protected division isn't 1 around 0
+    }
+
+    public void testCommutedProgramsAreCanonical() throws Exception {
+        rewriting.run(AlgebraicSimplificationTest.class, "commutedProgramsAreCanonical");
+    }
+
+    static void commutedProgramsAreCanonical() {
+        Random rd = new Random(41);
+        for (int p = 0; p < 500; p++) {
+            char[] left = program(rd, 4), right = program(rd, 4);
+            assertEquals(rewrite(concat((char) 110, left, right)), rewrite(concat((char) 110, right, left)));
+            assertEquals(rewrite(concat((char) 112, left, right)), rewrite(concat((char) 112, right, left)));
+        }
+    }
+
+    static void assertRewritesTo(char[] expected, char... program) {
+        assertEquals(tokens(expected), rewrite(program));
+    }
+
+    static String rewrite(char[] program) {  // the tokens after rewriting, constants by value
+        TinyGP.simplify(program, ctx);
+        StringBuilder tokens = new StringBuilder();
+        for (int i = 0; i < ctx.length; i++)
+            tokens.append(ctx.operations[i] == 0 ? String.valueOf(ctx.numbers[i] + 0.0) : "#" + (int) ctx.operations[i]).append(' ');
+        return tokens.toString();
+    }
+
+    static String tokens(char[] program) {  // what simplify turns an already simple program into
+        StringBuilder tokens = new StringBuilder();
+        for (char token : program)
+            tokens.append(token < VARNUMBER ? "#" + (token + 1) : token < 110 ? String.valueOf(TinyGP.x[token] + 0.0) : "#" + (int) token)
+                    .append(' ');
+        return tokens.toString();
+    }
+
+    static char[] concat(char root, char[] left, char[] right) {
+        char[] program = new char[1 + left.length + right.length];
+        program[0] = root;
+        System.arraycopy(left, 0, program, 1, left.length);
+        System.arraycopy(right, 0, program, 1 + left.length, right.length);
+        return program;
+    }
+
+    // random programs drawing often from the constants the rules look for
+    static char[] program(Random rd, int depth) {
+        char[] program = TinyGPHarness.randomProgram(rd, VARNUMBER, RANDOMNUMBER, depth);
+        for (int i = 0; i < program.length; i++)
+            if (program[i] >= VARNUMBER && program[i] < 110 && rd.nextBoolean())
+                program[i] = (char) (VARNUMBER + rd.nextInt(4));
+        return program;
+    }
+}
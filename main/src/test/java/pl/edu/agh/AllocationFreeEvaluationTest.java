@@ -0,0 +1,74 @@
+package pl.edu.agh;
+
+import junit.framework.TestCase;
+
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Once its context is warm, evaluating a program must not allocate, measured with the thread's allocation counter.
+ */
+public class AllocationFreeEvaluationTest extends TestCase {
+    static final int VARNUMBER = 2;
+    static final int RANDOMNUMBER = 50;
+    static final int FITNESSCASES = 600;
+
+    static double sink;
+
+    public void testStackEvaluator() throws Exception {
+        assertAllocationFree("0", "0", false);
+    }
+
+    public void testBatchEvaluator() throws Exception {
+        assertAllocationFree("1", "0", false);
+    }
+
+    public void testClosureEvaluator() throws Exception {
+        assertAllocationFree("2", "0", false);
+    }
+
+    public void testFitnessCache() throws Exception {
+        assertAllocationFree("1", "65536", false);
+    }
+
+    public void testCommonSubexpressions() throws Exception {
+        assertAllocationFree("0", "0", true);
+        assertAllocationFree("1", "0", true);
+    }
+
+    void assertAllocationFree(String evaluator, String cacheSize, boolean shared) throws Exception {
+        Map<String, String> tags = TinyGPHarness.defaults(VARNUMBER, RANDOMNUMBER, FITNESSCASES);
+        tags.put("EVALUATOR", evaluator);
+        tags.put("FITNESS_CACHE_SIZE", cacheSize);
+        tags.put("COMMON_SUBEXPRESSIONS", String.valueOf(shared));
+        TinyGPHarness.load(tags).run(AllocationFreeEvaluationTest.class, "measure");
+    }
+
+    static void measure() throws Exception {
+        Random rd = new Random(13);
+        TinyGPHarness.loadRandomTargets(rd, 5);
+        char[][] programs = new char[200][];
+        for (int p = 0; p < programs.length; p++)
+            programs[p] = TinyGPHarness.randomProgram(rd, VARNUMBER, RANDOMNUMBER, 7);
+        TinyGP.EvaluationContext ctx = TinyGPHarness.context();
+
+        allocated(programs, ctx, 20);  // warm up, grows the context's buffers
+        long overhead = allocated(programs, ctx, 0);
+        long allocated = allocated(programs, ctx, 5);
+        assertEquals("bytes allocated by " + 5 * programs.length + " evaluations", 0, allocated - overhead);
+    }
+
+    // bytes allocated by the current thread while every program is evaluated rounds times
+    static long allocated(char[][] programs, TinyGP.EvaluationContext ctx, int rounds) {
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        double sum = 0.0;
+        long before = threads.getCurrentThreadAllocatedBytes();
+        for (int r = 0; r < rounds; r++)
+            for (char[] program : programs)
+                sum += TinyGP.fitness_function(program, ctx);
+        long after = threads.getCurrentThreadAllocatedBytes();
+        sink = sum;
+        return after - before;
+    }
+}
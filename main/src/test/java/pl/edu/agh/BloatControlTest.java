@@ -0,0 +1,109 @@
+package pl.edu.agh;
+
+import junit.framework.TestCase;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Random;
+import java.util.SplittableRandom;
+
+/**
+ * Crossover must keep offspring within the node and depth limits, tree_depth must agree with a recursive walk,
+ * and the double tournament must favour short parents in steady state too.
+ */
+public class BloatControlTest extends TestCase {
+    static final int MAX_NODES = 40;
+    static final int MAX_DEPTH = 5;  // the initial DEPTH, so the initial population fits as well
+    static final int FITNESSCASES = 50;
+
+    public void testTreeDepthMatchesRecursiveWalk() {
+        Random rd = new Random(23);
+        for (int p = 0; p < 500; p++) {
+            char[] program = TinyGPHarness.randomProgram(rd, 2, 50, 8);
+            int depth = TinyGP.tree_depth(program, program.length, new int[program.length]);
+            assertEquals("program " + p, depth(program, new int[1]), depth);
+        }
+    }
+
+    public void testOffspringStayWithinLimits() throws Exception {
+        for (String replacement : new String[]{"0", "1"}) {
+            Map<String, String> tags = TinyGPHarness.defaults();
+            tags.put("fitnesscases", String.valueOf(FITNESSCASES));
+            tags.put("goal_fitness", "-1.0");  // never solved, run every generation
+            tags.put("GENERATIONS", "8");
+            tags.put("REPLACEMENT", replacement);
+            tags.put("MAX_NODES", String.valueOf(MAX_NODES));
+            tags.put("MAX_DEPTH", String.valueOf(MAX_DEPTH));
+            tags.put("PARSIMONY", "1");
+            TinyGPHarness.load(tags).run(BloatControlTest.class, "offspringStayWithinLimits");
+        }
+    }
+
+    static void offspringStayWithinLimits() throws Exception {
+        Random rd = new Random(2);
+        double[][] targets = new double[FITNESSCASES][2];
+        for (double[] row : targets) {
+            row[0] = rd.nextDouble() * 4 - 2;
+            row[1] = row[0] * row[0] * row[0] * row[0] + row[0];
+        }
+        TinyGPHarness.loadTargets(targets);
+        TinyGPHarness.evolve();
+
+        for (char[] program : TinyGP.population) {
+            int[] pc = new int[1];
+            int depth = depth(program, pc);
+            assertEquals(program.length, pc[0]);
+            assertTrue("length " + program.length, program.length <= MAX_NODES);
+            assertTrue("depth " + depth, depth <= MAX_DEPTH);
+        }
+    }
+
+    public void testSteadyStateDoubleTournamentPrefersShortParents() throws Exception {
+        // equal fitness, half the programs long: both winners are long a quarter of the time
+        assertEquals(0.25, longParents("1"), 0.03);
+        assertEquals(0.5, longParents("0"), 0.03);
+    }
+
+    static double longParents(String parsimony) throws Exception {
+        Map<String, String> tags = TinyGPHarness.defaults();
+        tags.put("fitnesscases", String.valueOf(FITNESSCASES));
+        tags.put("GENERATIONS", "1");
+        tags.put("POPSIZE", "100");
+        tags.put("PARSIMONY", parsimony);
+        tags.put("PARSIMONY_PRESSURE", "1.0");
+        return (Double) TinyGPHarness.load(tags).run(BloatControlTest.class, "drawParents");
+    }
+
+    // share of long programs among the parents select_parent picks, winners of fitness ties
+    static double drawParents() throws Exception {
+        TinyGPHarness.loadRandomTargets(new Random(3), 2);
+        TinyGP engine = TinyGPHarness.evolve();
+        char[] shorter = {0}, longer = {110, 0, 0};
+        TinyGP.population = new char[TinyGP.POPSIZE][];
+        for (int i = 0; i < TinyGP.POPSIZE; i++)
+            TinyGP.population[i] = i % 2 == 0 ? shorter : longer;
+        TinyGP.fitness = new double[TinyGP.POPSIZE];
+        Arrays.fill(TinyGP.fitness, -1.0);
+        TinyGP.stamps = new long[TinyGP.POPSIZE];
+
+        TinyGP.EvaluationContext ctx = TinyGPHarness.context();
+        SplittableRandom rd = new SplittableRandom(4);
+        int draws = 4000, long_parents = 0;
+        for (int d = 0; d < draws; d++) {
+            engine.select_parent(2, 0, ctx, rd);
+            if (ctx.parent_lengths[0] == longer.length)
+                long_parents++;
+        }
+        return (double) long_parents / draws;
+    }
+
+    static int depth(char[] program, int[] pc) {  // functions on the longest path, pc is moved past the subtree
+        char primitive = program[pc[0]++];
+        if (primitive < 110)
+            return 0;
+        int depth = depth(program, pc);
+        if (primitive <= 113)
+            depth = Math.max(depth, depth(program, pc));
+        return depth + 1;
+    }
+}
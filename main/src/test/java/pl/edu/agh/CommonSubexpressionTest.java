@@ -0,0 +1,114 @@
+package pl.edu.agh;
+
+import junit.framework.TestCase;
+
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Programs evaluated as DAGs must get exactly the fitness they get as trees, from the stack and the batch evaluator,
+ * with fewer nodes evaluated when subtrees repeat.
+ */
+public class CommonSubexpressionTest extends TestCase {
+    static final int VARNUMBER = 2;
+    static final int RANDOMNUMBER = 50;
+    static final int FITNESSCASES = 1100;  // more than two blocks of the batch evaluator
+    static final String[] EVALUATORS = {"stack_fitness", "batch_fitness"};
+
+    TinyGPHarness dag, tree;
+
+    static TinyGP.EvaluationContext ctx;  // of the engine the static methods run in
+
+    @Override
+    protected void setUp() throws Exception {
+        dag = load(true);
+        tree = load(false);
+    }
+
+    static TinyGPHarness load(boolean shared) throws Exception {
+        Map<String, String> tags = TinyGPHarness.defaults(VARNUMBER, RANDOMNUMBER, FITNESSCASES);
+        tags.put("COMMON_SUBEXPRESSIONS", String.valueOf(shared));
+        tags.put("SUPERINSTRUCTIONS", "false");  // Math.fma rounds once, where it applies differs with sharing
+        TinyGPHarness gp = TinyGPHarness.load(tags);
+        gp.run(CommonSubexpressionTest.class, "prepare");
+        return gp;
+    }
+
+    static void prepare() throws Exception {
+        TinyGPHarness.loadRandomTargets(new Random(43), 2);
+        ctx = TinyGPHarness.context();
+    }
+
+    public void testDagMatchesTree() throws Exception {
+        Random rd = new Random(47);
+        char[][] programs = new char[300][];
+        for (int p = 0; p < programs.length; p++)
+            programs[p] = repeating(rd);
+        double[][] shared = (double[][]) dag.run(CommonSubexpressionTest.class, "evaluated", (Object) programs);
+        double[][] expected = (double[][]) tree.run(CommonSubexpressionTest.class, "evaluated", (Object) programs);
+        long nodes = 0, unique = 0;
+        for (int p = 0; p < programs.length; p++) {
+            for (int e = 0; e < EVALUATORS.length; e++)
+                assertEquals(EVALUATORS[e] + " program " + p, Double.doubleToLongBits(expected[e][p]),
+                        Double.doubleToLongBits(shared[e][p]));
+            int length = (int) shared[2][p], evaluated = (int) shared[3][p];
+            assertTrue(evaluated <= length);
+            nodes += length;
+            unique += evaluated;
+        }
+        assertTrue("unique " + unique + " of " + nodes, unique < 0.8 * nodes);
+    }
+
+    // the fitness every program gets from the stack and the batch evaluator, then its length and unique nodes
+    static double[][] evaluated(char[][] programs) {
+        double[][] results = new double[4][programs.length];
+        for (int p = 0; p < programs.length; p++) {
+            TinyGP.simplify(programs[p], ctx);
+            results[0][p] = TinyGP.stack_fitness(ctx);
+            TinyGP.simplify(programs[p], ctx);
+            results[1][p] = TinyGP.batch_fitness(ctx);
+            results[2][p] = ctx.length;
+            results[3][p] = ctx.unique;
+        }
+        return results;
+    }
+
+    public void testRepeatsAreEvaluatedOnce() throws Exception {
+        dag.run(CommonSubexpressionTest.class, "repeatsAreEvaluatedOnce");
+    }
+
+    static void repeatsAreEvaluatedOnce() {
+        // SIN(x0) * SIN(x0) + SIN(x0) * SIN(x0), with 4 unique nodes: +, *, SIN and x0
+        char mul = 112, add = 110, sin = 115;
+        TinyGP.simplify(new char[]{add, mul, sin, 0, sin, 0, mul, sin, 0, sin, 0}, ctx);
+        TinyGP.stack_fitness(ctx);
+        assertEquals(11, ctx.length);
+        assertEquals(4, ctx.unique);
+        assertEquals(2, ctx.memos);
+    }
+
+    // a random program with a few subtrees pasted in several times, as crossover does
+    static char[] repeating(Random rd) {
+        char[][] pieces = new char[3][];
+        for (int i = 0; i < pieces.length; i++)
+            pieces[i] = piece(rd);
+        char[] program = new char[0];
+        for (int k = 0; k < 6; k++) {
+            char[] piece = rd.nextInt(3) == 0 ? piece(rd) : pieces[rd.nextInt(pieces.length)];
+            char[] joined = new char[1 + program.length + piece.length];
+            joined[0] = (char) (110 + rd.nextInt(4));
+            System.arraycopy(piece, 0, joined, 1, piece.length);
+            System.arraycopy(program, 0, joined, 1 + piece.length, program.length);
+            program = k == 0 ? piece : joined;
+        }
+        return program;
+    }
+
+    static char[] piece(Random rd) {  // mostly variables, so simplify can't fold it away
+        char[] piece = TinyGPHarness.randomProgram(rd, VARNUMBER, RANDOMNUMBER, 4);
+        for (int i = 0; i < piece.length; i++)
+            if (piece[i] >= VARNUMBER && piece[i] < 110 && rd.nextInt(5) > 0)
+                piece[i] = (char) rd.nextInt(VARNUMBER);
+        return piece;
+    }
+}
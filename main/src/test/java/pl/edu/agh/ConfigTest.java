@@ -0,0 +1,149 @@
+package pl.edu.agh;
+
+import junit.framework.TestCase;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * The engine must take its settings from the file and the system properties at run time, and build programs of
+ * the enabled operations only, reported with the tokens the caller numbered them with.
+ */
+public class ConfigTest extends TestCase {
+    static final char ADD = 110, MUL = 112, SIN = 115;
+
+    public void testSubsetOfOperations() throws Exception {
+        // as map_operations numbers ADD, MUL and SIN: the enabled ones first, the others after FSET_END
+        Map<String, String> tags = TinyGPHarness.defaults();
+        String[] ops = {"ADD", "MUL", "SIN", "SUB", "DIV", "EXP", "COS"};
+        for (int i = 0; i < ops.length; i++)
+            tags.put(ops[i], String.valueOf(110 + i));
+        tags.put("FSET_END", "112");
+        tags.put("POPSIZE", "500");
+        tags.put("GENERATIONS", "3");
+        tags.put("goal_fitness", "-1.0");  // never solved, run every generation
+        tags.put("fitnesscases", "20");
+        TinyGPHarness.load(tags).run(ConfigTest.class, "subsetOfOperations");
+    }
+
+    static void subsetOfOperations() throws Exception {
+        assertEquals(new String(new char[]{ADD, MUL, SIN}), new String(TinyGP.FUNCTIONS));
+        assertEquals(new String(new char[]{ADD, MUL}), new String(TinyGP.BINARY));
+        assertEquals(new String(new char[]{SIN}), new String(TinyGP.UNARY));
+
+        Random rd = new Random(17);
+        double[][] targets = new double[20][2];
+        for (double[] row : targets) {
+            row[0] = rd.nextDouble() * 4 - 2;
+            row[1] = row[0] * row[0] + Math.sin(row[0]);
+        }
+        TinyGPHarness.loadTargets(targets);
+        TinyGPHarness.evolve();
+
+        for (char[] program : TinyGP.population)
+            for (char token : program)
+                assertTrue("token " + (int) token, token < 110 || token == ADD || token == MUL || token == SIN);
+        for (Hist entry : TinyGP.hist) {
+            String[] fields = entry.toString().split(" ");
+            for (int i = 4; i < fields.length; i++)  // ADD, MUL and SIN are 110, 111 and 112 to the caller
+                assertTrue(fields[i], Integer.parseInt(fields[i]) <= 112);
+        }
+    }
+
+    public void testPropertiesOverrideFile() throws Exception {
+        Path file = Files.createTempFile("tinygp", ".properties");
+        Files.write(file, "POPSIZE=123\nGENERATIONS=3\nMETRIC=1\n".getBytes(StandardCharsets.UTF_8));
+        Map<String, String> tags = new HashMap<>();
+        tags.put("config", file.toString());
+        tags.put("GENERATIONS", "7");
+        TinyGPHarness.load(tags).run(ConfigTest.class, "propertiesOverrideFile");
+    }
+
+    static void propertiesOverrideFile() {
+        assertEquals(123, TinyGP.POPSIZE);
+        assertEquals(7, TinyGP.GENERATIONS);
+        assertEquals(1, TinyGP.METRIC);
+        assertEquals(5, TinyGP.DEPTH);  // neither, the default
+    }
+
+    public void testBadNumberNamesSetting() throws Exception {
+        Map<String, String> tags = TinyGPHarness.defaults();
+        tags.put("POPSIZE", "1e3");
+        try {
+            TinyGPHarness.load(tags);
+            fail("POPSIZE=1e3 accepted");
+        } catch (ExceptionInInitializerError e) {
+            assertTrue(e.getCause() instanceof IllegalArgumentException);
+            assertEquals("Setting POPSIZE=1e3 is not an integer", e.getCause().getMessage());
+        }
+        tags = TinyGPHarness.defaults();
+        tags.put("PMUT_PER_NODE", "five percent");
+        try {
+            TinyGPHarness.load(tags);
+            fail("PMUT_PER_NODE=five percent accepted");
+        } catch (ExceptionInInitializerError e) {
+            assertEquals("Setting PMUT_PER_NODE=five percent is not a number", e.getCause().getMessage());
+        }
+    }
+
+    public void testDefaultsKeepTreeFitness() throws Exception {
+        treeFitness(new HashMap<>());
+        Map<String, String> stack = new HashMap<>();
+        stack.put("EVALUATOR", "0");  // where superinstructions would apply
+        treeFitness(stack);
+    }
+
+    // the settings fit leaves at their defaults must not change how a program rounds: its fitness is the one
+    // of the tree it encodes, case by case (one block of cases, scalar kernels)
+    static void treeFitness(Map<String, String> tags) throws Exception {
+        tags.put("fitnesscases", "101");
+        tags.put("SIMD", "false");
+        TinyGPHarness.load(tags).run(ConfigTest.class, "compareWithTree");
+    }
+
+    static void compareWithTree() throws Exception {
+        Random rd = new Random(21);
+        double[][] targets = new double[101][2];
+        for (double[] row : targets) {
+            row[0] = rd.nextDouble() * 10 - 5;
+            row[1] = row[0] * row[0] - 0.5 * row[0];
+        }
+        TinyGPHarness.loadTargets(targets);
+        TinyGPHarness.randomConstants(rd);
+
+        TinyGP.EvaluationContext ctx = TinyGPHarness.context();
+        double[] x = TinyGP.x.clone();
+        for (int p = 0; p < 500; p++) {
+            char[] program = TinyGPHarness.randomProgram(rd, 1, 2, 6);  // mostly X1, little to fold
+            double fit = 0.0;
+            for (double[] row : targets) {
+                x[0] = row[0];
+                fit += Math.abs(tree(program, new int[1], x) - row[1]);
+            }
+            assertEquals(Double.doubleToRawLongBits(-fit), Double.doubleToRawLongBits(TinyGP.fitness_function(program, ctx)));
+        }
+    }
+
+    static double tree(char[] program, int[] pc, double[] x) {  // the recursive evaluation of tiny_gp.java
+        char primitive = program[pc[0]++];
+        if (primitive < 110)
+            return x[primitive];
+        double a = tree(program, pc, x);
+        return switch (primitive) {
+            case 110 -> a + tree(program, pc, x);
+            case 111 -> a - tree(program, pc, x);
+            case 112 -> a * tree(program, pc, x);
+            case 113 -> {
+                double b = tree(program, pc, x);
+                yield Math.abs(b) <= 0.001 ? a : a / b;
+            }
+            case 114 -> a <= 100.0 ? Math.exp(a) : a;
+            case 115 -> Math.sin(Math.toRadians(a));
+            default -> Math.cos(Math.toRadians(a));
+        };
+    }
+}
@@ -0,0 +1,102 @@
+package pl.edu.agh;
+
+import junit.framework.TestCase;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Programs past the rejection threshold are rejected by every evaluator, the others keep their exact fitness,
+ * also after the fitness cases were reordered.
+ */
+public class EarlyAbortTest extends TestCase {
+    static final int VARNUMBER = 2;
+    static final int RANDOMNUMBER = 50;
+    static final int FITNESSCASES = 1000;
+    static final String[] EVALUATORS = {"stack_fitness", "batch_fitness", "closure_fitness"};
+
+    TinyGPHarness gp;
+
+    static TinyGP.EvaluationContext ctx;  // of the engine the static methods run in
+
+    @Override
+    protected void setUp() throws Exception {
+        Map<String, String> tags = TinyGPHarness.defaults(VARNUMBER, RANDOMNUMBER, FITNESSCASES);
+        tags.put("POPSIZE", "200");
+        tags.put("REJECTION_PERCENTILE", "50.0");
+        tags.put("CASE_ORDERING", "true");
+        gp = TinyGPHarness.load(tags);
+        gp.run(EarlyAbortTest.class, "prepare");
+    }
+
+    static void prepare() throws Exception {
+        Random rd = new Random(5);
+        double[][] targets = new double[FITNESSCASES][VARNUMBER + 1];
+        for (double[] row : targets) {
+            row[0] = rd.nextDouble() * 4 - 2;
+            row[1] = rd.nextDouble() * 4 - 2;
+            row[2] = row[0] * row[1] + (rd.nextInt(20) == 0 ? 1000 : 0);  // a few cases dominate the error
+        }
+        TinyGPHarness.loadTargets(targets);
+        TinyGPHarness.randomConstants(rd);
+        ctx = TinyGPHarness.context();
+    }
+
+    public void testProgramsPastThresholdAreRejected() throws Exception {
+        gp.run(EarlyAbortTest.class, "programsPastThresholdAreRejected");
+    }
+
+    static void programsPastThresholdAreRejected() {
+        Random rd = new Random(9);
+        char[][] programs = new char[200][];
+        double[] fitness = new double[programs.length];
+        for (int p = 0; p < programs.length; p++) {
+            programs[p] = TinyGPHarness.randomProgram(rd, VARNUMBER, RANDOMNUMBER, 5);
+            TinyGP.simplify(programs[p], ctx);
+            fitness[p] = TinyGP.stack_fitness(ctx);
+        }
+
+        double threshold = TinyGP.rejection_threshold(fitness);
+        TinyGP.order_cases(fitness, programs);
+        TinyGP.rejection_threshold = threshold;
+        int count = 0;
+        for (int p = 0; p < programs.length; p++) {
+            TinyGP.simplify(programs[p], ctx);
+            double[] fits = {TinyGP.stack_fitness(ctx), TinyGP.batch_fitness(ctx), TinyGP.closure_fitness(ctx)};
+            for (int e = 0; e < EVALUATORS.length; e++) {
+                if (Double.isNaN(fitness[p]) || Math.abs(-fitness[p] - threshold) <= 1e-9 * threshold)
+                    continue;  // summing the reordered cases can round either way
+                if (-fitness[p] > threshold)
+                    assertEquals(EVALUATORS[e], TinyGP.REJECTED, fits[e]);
+                else
+                    assertEquals(EVALUATORS[e], fitness[p], fits[e], 1e-9 * Math.max(1.0, Math.abs(fitness[p])));
+            }
+            if (-fitness[p] > threshold)
+                count++;
+        }
+        assertTrue(count > 0);
+    }
+
+    public void testThresholdIsPercentile() throws Exception {
+        gp.run(EarlyAbortTest.class, "thresholdIsPercentile");
+    }
+
+    static void thresholdIsPercentile() {
+        Random rd = new Random(12);
+        double rejected = TinyGP.REJECTED;
+        for (int round = 0; round < 200; round++) {
+            double[] fitness = new double[1 + rd.nextInt(300)];
+            for (int i = 0; i < fitness.length; i++) {
+                int kind = rd.nextInt(10);
+                fitness[i] = kind == 0 ? rejected : kind == 1 ? Double.NaN : kind == 2 ? Double.NEGATIVE_INFINITY
+                        : -rd.nextInt(40);  // ties
+            }
+            double[] errors = Arrays.stream(fitness).filter(f -> f != rejected && !Double.isNaN(f)).map(f -> -f)
+                    .sorted().toArray();
+            double expected = errors.length == 0 ? Double.POSITIVE_INFINITY
+                    : errors[Math.max(0, (int) Math.ceil(0.5 * errors.length) - 1)];
+            assertEquals(expected, TinyGP.rejection_threshold(fitness.clone()), 0.0);
+        }
+    }
+}
@@ -0,0 +1,48 @@
+package pl.edu.agh;
+
+import junit.framework.TestCase;
+
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Every evaluator must give a program the fitness the stack interpreter gives it, over a number of fitness cases
+ * that leaves the last block partial.
+ */
+public class EvaluatorTest extends TestCase {
+    static final int VARNUMBER = 2;
+    static final int RANDOMNUMBER = 50;
+    static final int FITNESSCASES = 2 * 512 + 277;  // BATCH_SIZE is 512
+
+    public void testBatchMatchesStack() throws Exception {
+        load("1").run(EvaluatorTest.class, "compare");
+    }
+
+    public void testClosureMatchesStack() throws Exception {
+        load("2").run(EvaluatorTest.class, "compare");  // no subtree cache
+    }
+
+    static TinyGPHarness load(String evaluator) throws Exception {
+        Map<String, String> tags = TinyGPHarness.defaults(VARNUMBER, RANDOMNUMBER, FITNESSCASES);
+        tags.put("EVALUATOR", evaluator);
+        return TinyGPHarness.load(tags);
+    }
+
+    static void compare() throws Exception {
+        Random rd = new Random(5);
+        TinyGPHarness.loadRandomTargets(rd, 10);
+        TinyGPHarness.randomConstants(rd);
+        TinyGP.EvaluationContext ctx = TinyGPHarness.context();
+        for (int p = 0; p < 300; p++) {
+            char[] program = TinyGPHarness.randomProgram(rd, VARNUMBER, RANDOMNUMBER, 6);
+            TinyGP.simplify(program, ctx);
+            double expected = TinyGP.stack_fitness(ctx);
+            TinyGP.simplify(program, ctx);
+            double actual = TinyGP.evaluate(ctx);
+            if (Double.isNaN(expected))
+                assertTrue(Double.isNaN(actual));
+            else
+                assertEquals(expected, actual, 1e-9 * Math.max(1.0, Math.abs(expected)));
+        }
+    }
+}
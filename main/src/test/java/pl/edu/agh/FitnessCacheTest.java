@@ -0,0 +1,89 @@
+package pl.edu.agh;
+
+import junit.framework.TestCase;
+
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * The fitness cache must return exactly the fitness evaluation gives, keep no more entries than its capacity,
+ * give a referenced entry its second chance, and never serve one program the fitness of another whose hash
+ * only partly matches.
+ */
+public class FitnessCacheTest extends TestCase {
+    static final int CAPACITY = 4096;  // 64 segments of 8 sets of 8 ways
+    static final int VARNUMBER = 2;
+    static final int RANDOMNUMBER = 100;
+    static final int FITNESSCASES = 100;
+
+    // the cache on its own needs no settings, the engine's is fitness_function's
+    final FitnessCache cache = new FitnessCache(CAPACITY);
+    final TinyGP.EvaluationContext ctx = new TinyGP.EvaluationContext();
+
+    public void testHitReturnsEvaluatedFitness() throws Exception {
+        Map<String, String> tags = TinyGPHarness.defaults(VARNUMBER, RANDOMNUMBER, FITNESSCASES);
+        tags.put("FITNESS_CACHE_SIZE", String.valueOf(CAPACITY));
+        TinyGPHarness.load(tags).run(FitnessCacheTest.class, "hitReturnsEvaluatedFitness");
+    }
+
+    static void hitReturnsEvaluatedFitness() throws Exception {
+        TinyGPHarness.loadRandomTargets(new Random(8), 5);
+        TinyGP.EvaluationContext ctx = TinyGPHarness.context();
+        Random rd = new Random(9);
+        for (int p = 0; p < 200; p++) {
+            char[] program = TinyGPHarness.randomProgram(rd, VARNUMBER, RANDOMNUMBER, 6);
+            TinyGP.simplify(program, ctx);
+            double evaluated = TinyGP.evaluate(ctx);
+            double first = TinyGP.fitness_function(program, ctx);
+            long hits = TinyGP.fitness_cache.hits.sum();
+            double second = TinyGP.fitness_function(program, ctx);
+            assertEquals(hits + 1, TinyGP.fitness_cache.hits.sum());
+            assertEquals(Double.doubleToRawLongBits(evaluated), Double.doubleToRawLongBits(first));
+            assertEquals(Double.doubleToRawLongBits(evaluated), Double.doubleToRawLongBits(second));
+        }
+    }
+
+    public void testBoundedUnderEviction() {
+        Random rd = new Random(10);
+        for (int i = 0; i < 20 * CAPACITY; i++)
+            put(rd.nextLong(), rd.nextLong(), i);
+        int used = 0;
+        for (FitnessCache.Segment segment : cache.segments)
+            for (boolean slot : segment.used)
+                if (slot)
+                    used++;
+        assertEquals(CAPACITY, used);
+    }
+
+    public void testReferencedEntrySurvives() {
+        long set = 0x1500000000000003L;  // segment and set from the top and the low bits, the ways differ in between
+        for (int way = 0; way < 8; way++)
+            put(set | (long) way << 20, way, way);
+        assertTrue(get(set | 0L << 20, 0));  // the way the CLOCK hand points at
+        put(set | 8L << 20, 8, 8);  // passes it over, evicts the next one
+        assertTrue(get(set | 0L << 20, 0));
+        assertEquals(0.0, ctx.cached);
+        assertFalse(get(set | 1L << 20, 1));
+        assertTrue(get(set | 8L << 20, 8));
+    }
+
+    public void testPartialHashMatchIsMiss() {
+        put(42L, 1L, -3.5);
+        assertFalse(get(42L, 2L));  // same first half of the hash, another program
+        assertFalse(get(43L, 1L));
+        assertTrue(get(42L, 1L));
+        assertEquals(-3.5, ctx.cached);
+    }
+
+    void put(long hash1, long hash2, double fitness) {
+        ctx.hash1 = hash1;
+        ctx.hash2 = hash2;
+        cache.put(ctx, fitness);
+    }
+
+    boolean get(long hash1, long hash2) {
+        ctx.hash1 = hash1;
+        ctx.hash2 = hash2;
+        return cache.get(ctx);
+    }
+}
@@ -0,0 +1,171 @@
+package pl.edu.agh;
+
+import junit.framework.TestCase;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Fitness cases converted to the binary column format must load as the same values as from the text file they
+ * came from, as floats when stored as float32, and a file of another number of variables must be refused. The
+ * converter must tell the header of tiny_gp.java from a fitness case of as many values, and refuse ragged rows.
+ * Columns mapped a window at a time must be written and read as when mapped whole.
+ */
+public class FitnessCasesTest extends TestCase {
+    static final int ROWS = 30;
+
+    double[][] targets = new double[ROWS][3];
+    Path text, binary, single;
+
+    @Override
+    protected void setUp() throws Exception {
+        Random rd = new Random(24);
+        StringBuilder rows = new StringBuilder();
+        for (double[] row : targets) {
+            row[0] = rd.nextDouble() * 10 - 5;
+            row[1] = rd.nextDouble() * 10 - 5;
+            row[2] = row[0] * row[0] - row[1] / 3;
+            rows.append(row[0]).append('\t').append(row[1]).append('\t').append(row[2]).append('\n');
+        }
+        text = Files.createTempFile("targets", ".dat");
+        Files.write(text, rows.toString().getBytes(StandardCharsets.UTF_8));
+        Path withHeader = Files.createTempFile("problem", ".dat");  // as tiny_gp.java reads it, the header skipped
+        Files.write(withHeader, ("2 100 -5 5 " + ROWS + "\n" + rows).getBytes(StandardCharsets.UTF_8));
+        binary = Files.createTempFile("targets", ".bin");
+        single = Files.createTempFile("targets", ".bin");
+        TargetsConverter.convert_text(withHeader, binary, Double.BYTES);
+        TargetsConverter.convert_text(withHeader, single, Float.BYTES);
+    }
+
+    public void testBinaryLoadsAsText() throws Exception {
+        TinyGPHarness gp = TinyGPHarness.load(settings(2));
+        double[][] columns = columns(gp, text);
+        assertEquals(3, columns.length);
+        for (int i = 0; i < ROWS; i++)
+            for (int j = 0; j < 3; j++)
+                assertEquals(targets[i][j], columns[j][i], 0.0);
+
+        assertTrue(Arrays.deepEquals(columns, columns(gp, binary)));
+        assertNull(gp.run(FitnessCasesTest.class, "rows", binary.toString()));  // the batch evaluator reads the columns only
+        Map<String, String> tags = settings(2);
+        tags.put("EVALUATOR", "0");
+        TinyGPHarness stack = TinyGPHarness.load(tags);
+        assertTrue(Arrays.deepEquals((double[][]) stack.run(FitnessCasesTest.class, "rows", binary.toString()), rows(columns)));
+
+        columns = columns(gp, single);
+        for (int i = 0; i < ROWS; i++)
+            for (int j = 0; j < 3; j++)
+                assertEquals((float) targets[i][j], columns[j][i], 0.0);
+    }
+
+    public void testOtherVariablesRefused() throws Exception {
+        TinyGPHarness gp = TinyGPHarness.load(settings(1));
+        try {
+            columns(gp, binary);
+            fail("loaded 2 variables as 1");
+        } catch (IllegalArgumentException e) {
+            assertEquals("Data file has 2 variables, varnumber is 1", e.getMessage());
+        }
+    }
+
+    public void testHeaderOfFourVariables() throws Exception {  // as many values as a fitness case
+        Random rd = new Random(25);
+        StringBuilder rows = new StringBuilder();
+        double[][] cases = new double[ROWS][5];
+        for (double[] row : cases) {
+            for (int j = 0; j < 5; j++) {
+                row[j] = rd.nextDouble() * 10 - 5;
+                rows.append(row[j]).append(j < 4 ? ' ' : '\n');
+            }
+        }
+        Path withHeader = Files.createTempFile("problem", ".dat"), plain = Files.createTempFile("targets", ".dat");
+        Files.write(withHeader, ("4 100 -5 5 " + ROWS + "\n" + rows).getBytes(StandardCharsets.UTF_8));
+        Files.write(plain, rows.toString().getBytes(StandardCharsets.UTF_8));
+
+        TinyGPHarness gp = TinyGPHarness.load(settings(4));
+        for (Path file : new Path[]{withHeader, plain}) {
+            Path converted = Files.createTempFile("targets", ".bin");
+            long[] shape = convert(file, converted);
+            assertEquals(ROWS, shape[0]);
+            assertEquals(4, shape[1]);
+            assertTrue(Arrays.deepEquals(rows(columns(gp, converted)), cases));
+        }
+    }
+
+    public void testRaggedRowsRefused() throws Exception {
+        String[] files = {"1 2\n3 4 5\n6 7\n", "1 2\n3 4\n5\n", "1 100 -5 5 3\n1 2\n3 4\n5 6 7\n"};
+        String[] errors = {"Too many values in line 2", "Not enough values in line 3", "Too many values in line 4"};
+        for (int f = 0; f < files.length; f++) {
+            Path file = Files.createTempFile("targets", ".dat");
+            Files.write(file, files[f].getBytes(StandardCharsets.UTF_8));
+            try {
+                convert(file, Files.createTempFile("targets", ".bin"));
+                fail("converted " + files[f]);
+            } catch (IOException e) {
+                assertEquals(errors[f], e.getMessage());
+            }
+        }
+    }
+
+    public void testColumnsMappedInWindows() throws Exception {  // of a few rows, that don't divide the columns
+        TinyGPHarness gp = TinyGPHarness.load(settings(2));
+        for (Path whole : new Path[]{binary, single}) {
+            int width = whole == binary ? Double.BYTES : Float.BYTES;
+            Path windowed = Files.createTempFile("targets", ".bin");
+            TargetsConverter.write(windowed, ROWS, 2, width, consumer -> {
+                for (int i = 0; i < ROWS; i++)
+                    consumer.accept(i, targets[i]);
+            }, 7L * width);
+            assertTrue(Arrays.equals(Files.readAllBytes(whole), Files.readAllBytes(windowed)));
+            assertTrue(Arrays.deepEquals(columns(gp, whole),
+                    (double[][]) gp.run(FitnessCasesTest.class, "windowed", whole.toString(), 4L * width)));
+        }
+    }
+
+    static long[] convert(Path text, Path binary) throws IOException {
+        return TargetsConverter.convert_text(text, binary, Double.BYTES);
+    }
+
+    static Map<String, String> settings(int varnumber) {
+        Map<String, String> tags = TinyGPHarness.defaults();
+        tags.put("varnumber", String.valueOf(varnumber));
+        tags.put("fitnesscases", String.valueOf(ROWS));
+        return tags;
+    }
+
+    static double[][] columns(TinyGPHarness gp, Path file) throws Exception {
+        return (double[][]) gp.run(FitnessCasesTest.class, "columns", file.toString());
+    }
+
+    // the fitness cases as the engine loads them from file, read from the columns of every loader
+    static double[][] columns(String file) {
+        TinyGP.file = file;
+        TinyGP.loadTargets();
+        return TinyGP.columns;
+    }
+
+    static double[][] rows(String file) {  // of the stack evaluator, null for the others
+        TinyGP.file = file;
+        TinyGP.loadTargets();
+        return TinyGP.targets;
+    }
+
+    static double[][] windowed(String file, long window) throws IOException {  // the binary file read window bytes at a time
+        TinyGP.file = file;
+        TinyGP.load_binary(window);
+        return TinyGP.columns;
+    }
+
+    static double[][] rows(double[][] columns) {
+        double[][] rows = new double[columns[0].length][columns.length];
+        for (int i = 0; i < rows.length; i++)
+            for (int j = 0; j < columns.length; j++)
+                rows[i][j] = columns[j][i];
+        return rows;
+    }
+}
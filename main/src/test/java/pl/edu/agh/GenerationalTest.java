@@ -0,0 +1,85 @@
+package pl.edu.agh;
+
+import junit.framework.TestCase;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Generational replacement must give the same run for the same seed with several workers, and carry the best
+ * program of every generation over the buffer swap, in arrays and in the arena.
+ */
+public class GenerationalTest extends TestCase {
+    static final int FITNESSCASES = 30;
+    static final int THREADS = 4;
+
+    public void testReproducible() throws Exception {
+        for (boolean arena : new boolean[]{false, true}) {
+            TinyGPHarness first = run(arena), second = run(arena);
+            assertEquals(first.run(GenerationalTest.class, "hist"), second.run(GenerationalTest.class, "hist"));
+            assertTrue(Arrays.equals((double[]) first.run(GenerationalTest.class, "fitness"),
+                    (double[]) second.run(GenerationalTest.class, "fitness")));
+            assertTrue(Arrays.equals((String[]) first.run(GenerationalTest.class, "programs", arena),
+                    (String[]) second.run(GenerationalTest.class, "programs", arena)));
+        }
+    }
+
+    public void testEliteSurvivesSwap() throws Exception {
+        for (boolean arena : new boolean[]{false, true})
+            run(arena).run(GenerationalTest.class, "eliteSurvivesSwap", arena);
+    }
+
+    static TinyGPHarness run(boolean arena) throws Exception {
+        Map<String, String> tags = TinyGPHarness.defaults();
+        tags.put("threads", String.valueOf(THREADS));
+        tags.put("REPLACEMENT", "1");
+        tags.put("POPULATION_ARENA", String.valueOf(arena));
+        tags.put("POPSIZE", "1500");
+        tags.put("GENERATIONS", "6");
+        tags.put("goal_fitness", "-1.0");  // never solved, run every generation
+        tags.put("fitnesscases", String.valueOf(FITNESSCASES));
+        tags.put("seed", "19");
+        TinyGPHarness gp = TinyGPHarness.load(tags);
+        gp.run(GenerationalTest.class, "evolve");
+        return gp;
+    }
+
+    static void evolve() throws Exception {
+        Random rd = new Random(4);
+        double[][] targets = new double[FITNESSCASES][2];
+        for (double[] row : targets) {
+            row[0] = rd.nextDouble() * 6 - 3;
+            row[1] = row[0] * row[0] + 3 * row[0] - 1;
+        }
+        TinyGPHarness.loadTargets(targets);
+        TinyGPHarness.evolve();
+    }
+
+    static void eliteSurvivesSwap(boolean arena) {
+        double previous = Double.POSITIVE_INFINITY;
+        for (Hist entry : TinyGP.hist) {  // the error of the best program never grows
+            assertTrue(entry.best_fitness <= previous);
+            previous = entry.best_fitness;
+        }
+
+        // the best program of the generation before the last one is still in the population
+        String elite = new String(TinyGP.hist.get(TinyGP.hist.size() - 2).best_individual);
+        assertTrue("elite lost, arena=" + arena, Arrays.asList(programs(arena)).contains(elite));
+    }
+
+    static String[] programs(boolean arena) {
+        String[] programs = new String[TinyGP.POPSIZE];
+        for (int i = 0; i < programs.length; i++)
+            programs[i] = new String(arena ? TinyGP.arena.program(i) : TinyGP.population[i]);
+        return programs;
+    }
+
+    static double[] fitness() {
+        return TinyGP.fitness;
+    }
+
+    static String hist() {
+        return TinyGP.hist.toString();
+    }
+}
@@ -0,0 +1,91 @@
+package pl.edu.agh;
+
+import junit.framework.TestCase;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+/**
+ * The initial population built by the workers must ramp its depths, have no duplicates when asked to,
+ * and with per-individual streams be the same for any number of threads, with or without duplicates.
+ */
+public class InitializationTest extends TestCase {
+    static final int POPSIZE = 2000;
+    static final int MIN_DEPTH = 2;
+    static final int DEPTH = 6;
+
+    public void testRampedHalfAndHalf() throws Exception {
+        char[][] population = initialize("2", true, 2);
+        Set<String> programs = new HashSet<>();
+        int[] full = new int[DEPTH + 1];
+        for (char[] program : population) {
+            programs.add(new String(program));
+            int depth = BloatControlTest.depth(program, new int[1]);
+            assertTrue("depth " + depth, depth >= 1 && depth <= DEPTH);
+            if (isFull(program, new int[1], depth))
+                full[depth]++;
+        }
+        assertEquals(POPSIZE, programs.size());
+        for (int depth = MIN_DEPTH; depth <= DEPTH; depth++)  // about POPSIZE / 10 of each
+            assertTrue("full of depth " + depth + ": " + full[depth], full[depth] >= POPSIZE / 10 - 20);
+    }
+
+    public void testSameForAnyThreadCount() throws Exception {
+        char[][] one = initialize("2", false, 1);
+        char[][] three = initialize("2", false, 3);
+        for (int i = 0; i < POPSIZE; i++)
+            assertTrue("individual " + i, Arrays.equals(one[i], three[i]));
+    }
+
+    public void testUniqueSameForSameSeed() throws Exception {
+        char[][] first = initialize("2", true, 4);
+        char[][] second = initialize("2", true, 4);
+        char[][] single = initialize("2", true, 1);
+        Set<String> programs = new HashSet<>();
+        for (int i = 0; i < POPSIZE; i++) {
+            assertTrue("individual " + i, Arrays.equals(first[i], second[i]));
+            assertTrue("individual " + i, Arrays.equals(first[i], single[i]));
+            programs.add(new String(first[i]));
+        }
+        assertEquals(POPSIZE, programs.size());
+    }
+
+    static char[][] initialize(String method, boolean unique, int threads) throws Exception {
+        Map<String, String> tags = TinyGPHarness.defaults();
+        tags.put("POPSIZE", String.valueOf(POPSIZE));
+        tags.put("GENERATIONS", "1");  // the initial population only
+        tags.put("DEPTH", String.valueOf(DEPTH));
+        tags.put("INIT_METHOD", method);
+        tags.put("MIN_DEPTH", String.valueOf(MIN_DEPTH));
+        tags.put("INIT_UNIQUE", String.valueOf(unique));
+        tags.put("RNG_STREAMS", "1");
+        tags.put("seed", "5");
+        tags.put("fitnesscases", "20");
+        tags.put("threads", String.valueOf(threads));
+        return (char[][]) TinyGPHarness.load(tags).run(InitializationTest.class, "initialPopulation");
+    }
+
+    static char[][] initialPopulation() throws Exception {
+        Random rd = new Random(3);
+        double[][] targets = new double[20][2];
+        for (double[] row : targets) {
+            row[0] = rd.nextDouble() * 4 - 2;
+            row[1] = row[0] * row[0] + 1;
+        }
+        TinyGPHarness.loadTargets(targets);
+        TinyGPHarness.evolve();
+        return TinyGP.population;
+    }
+
+    static boolean isFull(char[] program, int[] pc, int depth) {  // every terminal at the given depth
+        char primitive = program[pc[0]++];
+        if (primitive < 110)
+            return depth == 0;
+        if (depth == 0 || !isFull(program, pc, depth - 1))
+            return false;
+        return primitive > 113 || isFull(program, pc, depth - 1);
+    }
+}
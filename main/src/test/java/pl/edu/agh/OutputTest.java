@@ -0,0 +1,97 @@
+package pl.edu.agh;
+
+import junit.framework.TestCase;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * The NDJSON records must carry what the TOKEN text dump of the same run carries, the constants first and a
+ * generation per line, infinite and NaN values as null, and leave the dump out.
+ */
+public class OutputTest extends TestCase {
+    static final Pattern FIELD = Pattern.compile("\"(\\w+)\":(\\[[^]]*]|[^,}]+)");
+
+    public void testRecordsMatchText() throws Exception {
+        List<String> text = run(0, 1.0), records = run(1, 1.0);
+        int token = text.indexOf("TOKEN");
+        assertTrue(text.toString(), token >= 0);
+        assertFalse(records.contains("TOKEN"));
+
+        List<String> converted = new ArrayList<>();
+        for (String line : records) {
+            if (!line.startsWith("{"))
+                continue;
+            Map<String, String> record = new HashMap<>();
+            for (Matcher field = FIELD.matcher(line); field.find(); )
+                record.put(field.group(1), field.group(2));
+            if (record.containsKey("constants")) {
+                assertTrue("constants first", converted.isEmpty());
+                converted.add(values(record.get("constants")) + " ");
+            } else {
+                converted.add(record.get("gen") + " " + record.get("avg_fitness") + " " + record.get("best_fitness")
+                        + " " + record.get("avg_size") + " " + values(record.get("best")));
+            }
+        }
+        assertEquals(1 + 4, converted.size());  // the constants, then one record per generation
+        assertEquals(text.subList(token + 1, text.size()), converted);
+    }
+
+    public void testNonFiniteAsNull() throws Exception {
+        List<String> records = run(1, 1e307);  // every error sums to Infinity
+        int generations = 0;
+        for (String line : records) {
+            if (!line.startsWith("{") || line.contains("constants"))
+                continue;
+            assertTrue(line, line.contains("\"avg_fitness\":null,\"best_fitness\":null,"));
+            assertFalse(line, line.contains("Infinity") || line.contains("NaN"));
+            generations++;
+        }
+        assertEquals(4, generations);
+    }
+
+    static String values(String array) {  // [a,b,c] as the text dump separates them
+        return array.substring(1, array.length() - 1).replace(',', ' ');
+    }
+
+    static List<String> run(int output, double scale) throws Exception {  // scale of the expected results
+        Map<String, String> tags = TinyGPHarness.defaults();
+        tags.put("OUTPUT", String.valueOf(output));
+        tags.put("POPSIZE", "800");
+        tags.put("GENERATIONS", "4");
+        tags.put("goal_fitness", "-1.0");  // never solved, run every generation
+        tags.put("fitnesscases", "20");
+        tags.put("RNG_STREAMS", "1");
+        tags.put("seed", "11");
+        return Arrays.asList(((String) TinyGPHarness.load(tags).run(OutputTest.class, "output", scale)).split("\n"));
+    }
+
+    static String output(double scale) throws Exception {  // what the run prints
+        Random rd = new Random(25);
+        double[][] targets = new double[20][2];
+        for (double[] row : targets) {
+            row[0] = rd.nextDouble() * 4 - 2;
+            row[1] = (row[0] * row[0] - Math.cos(row[0])) * scale;
+        }
+        TinyGPHarness.loadTargets(targets);
+
+        PrintStream out = System.out;
+        ByteArrayOutputStream captured = new ByteArrayOutputStream();
+        System.setOut(new PrintStream(captured, true, StandardCharsets.UTF_8));
+        try {
+            new TinyGP();
+        } finally {
+            System.setOut(out);
+        }
+        return captured.toString(StandardCharsets.UTF_8);
+    }
+}
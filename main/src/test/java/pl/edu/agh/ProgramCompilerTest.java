@@ -0,0 +1,120 @@
+package pl.edu.agh;
+
+import junit.framework.TestCase;
+
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Programs compiled to hidden classes must compute the same values as the interpreter.
+ */
+public class ProgramCompilerTest extends TestCase {
+    static final int VARNUMBER = 3;
+    static final int RANDOMNUMBER = 100;
+    static final int FITNESSCASES = 700;
+
+    TinyGPHarness gp;
+
+    static double[][] targets;  // of the engine the static methods run in
+    static TinyGP.EvaluationContext ctx;
+
+    @Override
+    protected void setUp() throws Exception {
+        gp = load("0");
+    }
+
+    static TinyGPHarness load(String cacheSize) throws Exception {
+        Map<String, String> tags = TinyGPHarness.defaults();
+        tags.put("varnumber", String.valueOf(VARNUMBER));
+        tags.put("fitnesscases", String.valueOf(FITNESSCASES));
+        tags.put("COMPILE_THRESHOLD", "3");
+        tags.put("FITNESS_CACHE_SIZE", cacheSize);
+        TinyGPHarness gp = TinyGPHarness.load(tags);
+        gp.run(ProgramCompilerTest.class, "prepare");
+        return gp;
+    }
+
+    static void prepare() throws Exception {
+        Random rd = new Random(7);
+        targets = TinyGPHarness.loadRandomTargets(rd, 100);
+        TinyGPHarness.randomConstants(rd);
+        ctx = TinyGPHarness.context();
+    }
+
+    public void testCompiledProgramsMatchInterpreter() throws Exception {
+        gp.run(ProgramCompilerTest.class, "compiledProgramsMatchInterpreter");
+    }
+
+    static void compiledProgramsMatchInterpreter() {
+        Random rd = new Random(11);
+        double[] out = new double[FITNESSCASES];
+        for (int p = 0; p < 300; p++) {
+            TinyGP.simplify(TinyGPHarness.randomProgram(rd, VARNUMBER, RANDOMNUMBER, 8), ctx);
+            CompiledProgram program = ProgramCompiler.compile(ctx);
+            assertNotNull(program);
+
+            program.eval(TinyGP.columns, out, 0, FITNESSCASES);
+            double[] stack = new double[ctx.length];
+            for (int i = 0; i < FITNESSCASES; i++) {
+                System.arraycopy(targets[i], 0, ctx.variables, 0, VARNUMBER);
+                double expected = TinyGP.run(stack, ctx);
+                if (Double.isNaN(expected))
+                    assertTrue(Double.isNaN(out[i]));
+                else
+                    assertEquals(expected, out[i], 1e-12 * Math.max(1.0, Math.abs(expected)));
+            }
+        }
+    }
+
+    public void testProgramIsCompiledOnceHot() throws Exception {
+        gp.run(ProgramCompilerTest.class, "programIsCompiledOnceHot");
+    }
+
+    static void programIsCompiledOnceHot() {
+        char[] source = TinyGPHarness.randomProgram(new Random(5), VARNUMBER, RANDOMNUMBER, 6);
+        TinyGP.simplify(source, ctx);
+        double interpreted = TinyGP.stack_fitness(ctx);
+
+        assertNull(ProgramCompiler.hot(ctx));
+        assertNull(ProgramCompiler.hot(ctx));
+        CompiledProgram program = ProgramCompiler.hot(ctx);
+        assertNotNull(program);
+        assertSame(program, ProgramCompiler.hot(ctx));
+        assertEquals(interpreted, TinyGP.fitness_function(source, ctx), 1e-9 * Math.max(1.0, Math.abs(interpreted)));
+    }
+
+    public void testResetStartsProgramsCold() throws Exception {
+        gp.run(ProgramCompilerTest.class, "resetStartsProgramsCold");
+    }
+
+    static void resetStartsProgramsCold() {
+        char[] source = TinyGPHarness.randomProgram(new Random(5), VARNUMBER, RANDOMNUMBER, 6);
+        TinyGP.simplify(source, ctx);
+        for (int i = 0; i < 3; i++)
+            ProgramCompiler.hot(ctx);
+        assertEquals(1L, ProgramCompiler.compilations.sum());
+
+        TinyGP.reset();  // as the next run of a warm engine does
+        assertEquals(0L, ProgramCompiler.compilations.sum());
+        assertNull(ProgramCompiler.hot(ctx));
+        assertNull(ProgramCompiler.hot(ctx));
+        assertNotNull(ProgramCompiler.hot(ctx));
+    }
+
+    public void testCacheHitsMakeAProgramHot() throws Exception {
+        load("4096").run(ProgramCompilerTest.class, "cacheHitsMakeAProgramHot");
+    }
+
+    static void cacheHitsMakeAProgramHot() {
+        char[] source = TinyGPHarness.randomProgram(new Random(5), VARNUMBER, RANDOMNUMBER, 6);
+        double interpreted = TinyGP.fitness_function(source, ctx);
+        for (int i = 0; i < 2; i++)  // served by the cache, still counted
+            assertEquals(interpreted, TinyGP.fitness_function(source, ctx));
+        assertEquals(0L, ProgramCompiler.compilations.sum());
+
+        TinyGP.fitness_cache.reset();  // as if evicted
+        double compiled = TinyGP.fitness_function(source, ctx);
+        assertEquals(1L, ProgramCompiler.compilations.sum());
+        assertEquals(interpreted, compiled, 1e-9 * Math.max(1.0, Math.abs(interpreted)));
+    }
+}
@@ -0,0 +1,64 @@
+package pl.edu.agh;
+
+import junit.framework.TestCase;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Runs with the same seed must be bit-identical: with per-worker streams for the same thread count, with
+ * per-individual streams for any thread count. Generational replacement, the workers don't race on the population.
+ */
+public class ReproducibilityTest extends TestCase {
+    static final int FITNESSCASES = 40;
+
+    public void testSameSeedAndThreadCount() throws Exception {
+        List<String> first = run(4, 0, 7);
+        assertEquals(first, run(4, 0, 7));
+        assertFalse(first.equals(run(4, 0, 8)));
+    }
+
+    public void testPerIndividualStreamsAcrossThreadCounts() throws Exception {
+        List<String> single = run(1, 1, 7);
+        assertEquals(single, run(3, 1, 7));
+        assertEquals(single, run(8, 1, 7));
+    }
+
+    // the final population, its fitness and the history, as text of the exact values
+    @SuppressWarnings("unchecked")
+    static List<String> run(int threads, int streams, int seed) throws Exception {
+        Map<String, String> tags = TinyGPHarness.defaults();
+        tags.put("threads", String.valueOf(threads));
+        tags.put("RNG_STREAMS", String.valueOf(streams));
+        tags.put("REPLACEMENT", "1");
+        tags.put("POPSIZE", "2000");
+        tags.put("GENERATIONS", "4");
+        tags.put("goal_fitness", "-1.0");  // never solved, run every generation
+        tags.put("fitnesscases", String.valueOf(FITNESSCASES));
+        tags.put("seed", String.valueOf(seed));
+        TinyGPHarness gp = TinyGPHarness.load(tags);
+        return (List<String>) gp.run(ReproducibilityTest.class, "evolve", threads);
+    }
+
+    static List<String> evolve(int threads) throws Exception {
+        assertEquals(threads, TinyGP.NUM_THREADS);
+        Random rd = new Random(2);
+        double[][] targets = new double[FITNESSCASES][2];
+        for (double[] row : targets) {
+            row[0] = rd.nextDouble() * 4 - 2;
+            row[1] = row[0] * row[0] * row[0] - 2 * row[0];
+        }
+        TinyGPHarness.loadTargets(targets);
+        TinyGPHarness.evolve();
+
+        List<String> result = new ArrayList<>();
+        for (int i = 0; i < TinyGP.population.length; i++)
+            result.add(Arrays.toString(TinyGP.population[i]) + " " + Double.doubleToRawLongBits(TinyGP.fitness[i]));
+        for (Hist entry : TinyGP.hist)
+            result.add(entry.toString());
+        return result;
+    }
+}
@@ -0,0 +1,76 @@
+package pl.edu.agh;
+
+import junit.framework.TestCase;
+
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * The Vector API kernels of the batch evaluator must agree with the scalar run().
+ */
+public class SimdKernelsTest extends TestCase {
+    static final int VARNUMBER = 2;
+    static final int RANDOMNUMBER = 100;
+    static final int FITNESSCASES = 1037;  // not a multiple of the block size nor of the lane count
+    static final double TOLERANCE = 1e-9;
+
+    public void testMaeMatchesScalarRun() throws Exception {
+        check("0");
+    }
+
+    public void testMseMatchesScalarRun() throws Exception {
+        check("1");
+    }
+
+    void check(String metric) throws Exception {
+        if (!TinyGPHarness.hasVectorModule())
+            return;  // nothing to compare, TinyGP falls back to the scalar kernels
+
+        Map<String, String> tags = TinyGPHarness.defaults();
+        tags.put("varnumber", String.valueOf(VARNUMBER));
+        tags.put("fitnesscases", String.valueOf(FITNESSCASES));
+        tags.put("METRIC", metric);
+        tags.put("SIMD", "true");
+        TinyGPHarness.load(tags).run(SimdKernelsTest.class, "compare");
+    }
+
+    static void compare() throws Exception {
+        assertEquals("SimdKernels", TinyGP.kernels.getClass().getSimpleName());
+        Random rd = new Random(42);
+        double[][] targets = new double[FITNESSCASES][VARNUMBER + 1];
+        for (double[] row : targets) {
+            row[0] = rd.nextDouble() * 20 - 10;
+            row[1] = rd.nextDouble() * 20 - 10;
+            row[2] = row[0] * row[0] - Math.sin(row[1]);
+        }
+        TinyGPHarness.loadTargets(targets);
+        TinyGPHarness.randomConstants(rd);
+
+        TinyGP.EvaluationContext ctx = TinyGPHarness.context();
+        for (int p = 0; p < 500; p++) {
+            TinyGP.simplify(TinyGPHarness.randomProgram(rd, VARNUMBER, RANDOMNUMBER, 6), ctx);
+            double[] stack = new double[ctx.length];
+            double[] expected = new double[FITNESSCASES];
+            for (int i = 0; i < FITNESSCASES; i++) {
+                System.arraycopy(targets[i], 0, ctx.variables, 0, VARNUMBER);
+                expected[i] = TinyGP.run(stack, ctx);
+            }
+
+            assertClose(TinyGP.stack_fitness(ctx), TinyGP.batch_fitness(ctx));
+            for (int from = 0; from < FITNESSCASES; from += TinyGP.BATCH_SIZE) {
+                int n = Math.min(TinyGP.BATCH_SIZE, FITNESSCASES - from);
+                double[] results = TinyGP.run_batch(ctx, from, n);
+                for (int i = 0; i < n; i++)
+                    assertClose(expected[from + i], results[i]);
+            }
+        }
+    }
+
+    static void assertClose(double expected, double actual) {
+        if (Double.isNaN(expected) || Double.isInfinite(expected)) {
+            assertEquals(expected, actual);
+            return;
+        }
+        assertEquals(expected, actual, TOLERANCE * Math.max(1.0, Math.abs(expected)));
+    }
+}
@@ -0,0 +1,92 @@
+package pl.edu.agh;
+
+import junit.framework.TestCase;
+
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+/**
+ * The statistics reduced by the workers over blocks of the population must be those of a serial scan, the count
+ * of distinct programs merged from their ranges of hashes too, and the best program must be rendered as the
+ * expression print_individual used to print.
+ */
+public class StatisticsTest extends TestCase {
+    static final int POPSIZE = 9000;  // a few blocks, the last one partial
+
+    TinyGPHarness gp;
+
+    static TinyGP engine;  // of the class loader the static methods run in
+
+    @Override
+    protected void setUp() throws Exception {
+        Map<String, String> tags = TinyGPHarness.defaults();
+        tags.put("POPSIZE", String.valueOf(POPSIZE));
+        tags.put("GENERATIONS", "3");
+        tags.put("goal_fitness", "-1.0");  // never solved, the last stats are of the final population
+        tags.put("fitnesscases", "30");
+        tags.put("threads", "3");
+        gp = TinyGPHarness.load(tags);
+        gp.run(StatisticsTest.class, "evolve");
+    }
+
+    static void evolve() throws Exception {
+        Random rd = new Random(7);
+        double[][] targets = new double[30][2];
+        for (double[] row : targets) {
+            row[0] = rd.nextDouble() * 4 - 2;
+            row[1] = row[0] * row[0] * row[0] - row[0];
+        }
+        TinyGPHarness.loadTargets(targets);
+        engine = TinyGPHarness.evolve();
+    }
+
+    public void testReductionMatchesSerialScan() throws Exception {
+        gp.run(StatisticsTest.class, "reductionMatchesSerialScan");
+    }
+
+    static void reductionMatchesSerialScan() {
+        double best = Double.NEGATIVE_INFINITY, sum = 0.0;
+        long nodes = 0;
+        int counted = 0;
+        for (int i = 0; i < POPSIZE; i++) {
+            nodes += TinyGP.population[i].length;
+            if (TinyGP.fitness[i] == -1.0e30)
+                continue;
+            sum += TinyGP.fitness[i];
+            counted++;
+            best = Math.max(best, TinyGP.fitness[i]);
+        }
+        Hist last = TinyGP.hist.get(TinyGP.hist.size() - 1);
+        assertEquals(-best, last.best_fitness, 0.0);
+        assertEquals(-sum / counted, last.avg_fitness, 1e-9 * Math.abs(sum / counted));
+        assertEquals((double) nodes / POPSIZE, last.avg_size, 0.0);
+        assertEquals(best, TinyGP.fitness[TinyGP.best_index], 0.0);
+    }
+
+    public void testDistinctPrograms() throws Exception {
+        gp.run(StatisticsTest.class, "distinctPrograms");
+    }
+
+    static void distinctPrograms() {
+        Set<Long> hashes = new HashSet<>();
+        for (char[] program : TinyGP.population)
+            hashes.add(TinyGP.program_hash(program, program.length));
+        assertTrue(hashes.size() < POPSIZE);  // some programs repeat, in and across blocks
+        engine.reduce(TinyGP.fitness, TinyGP.population);
+        assertEquals(hashes.size(), engine.distinct_programs());
+    }
+
+    public void testRender() throws Exception {
+        gp.run(StatisticsTest.class, "render");
+    }
+
+    static void render() {
+        char add = 110, div = 113, sin = 115, constant = 1;  // variable 0 is X1
+        StringBuilder out = new StringBuilder("Best Individual: ");
+        int end = engine.render(new char[]{add, 0, div, sin, 0, constant}, 0, out);
+        assertEquals(6, end);
+        assertEquals("Best Individual: (X1 + (SIN(X1) / " + TinyGP.x[1] + "))", out.toString());
+    }
+}
@@ -0,0 +1,55 @@
+package pl.edu.agh;
+
+import junit.framework.TestCase;
+
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Many workers replacing slots concurrently must never leave a fitness that belongs to another program.
+ */
+public class SteadyStateStressTest extends TestCase {
+    static final int THREADS = 16;
+    static final int FITNESSCASES = 40;
+
+    public void testStoredFitnessMatchesProgram() throws Exception {
+        evolveAndVerify(false);
+    }
+
+    public void testStoredFitnessMatchesProgramInArena() throws Exception {
+        evolveAndVerify(true);
+    }
+
+    void evolveAndVerify(boolean arena) throws Exception {
+        Map<String, String> tags = TinyGPHarness.defaults();
+        tags.put("FSET_END", "113");  // no transcendental functions, so re-evaluation is bit-exact
+        tags.put("POPSIZE", "4000");
+        tags.put("GENERATIONS", "8");
+        tags.put("fitnesscases", String.valueOf(FITNESSCASES));
+        tags.put("goal_fitness", "-1.0");  // never solved, run every generation
+        tags.put("REPLACEMENT", "0");
+        tags.put("seed", "3");
+        tags.put("POPULATION_ARENA", String.valueOf(arena));
+
+        tags.put("threads", String.valueOf(THREADS));
+        TinyGPHarness.load(tags).run(SteadyStateStressTest.class, "verify", arena);
+    }
+
+    static void verify(boolean arena) throws Exception {
+        assertEquals(THREADS, TinyGP.NUM_THREADS);
+        Random rd = new Random(1);
+        double[][] targets = new double[FITNESSCASES][2];
+        for (double[] row : targets) {
+            row[0] = rd.nextDouble() * 4 - 2;
+            row[1] = row[0] * row[0] * row[0] + row[0];
+        }
+        TinyGPHarness.loadTargets(targets);
+        TinyGPHarness.evolve();  // loads the targets again and evolves
+
+        TinyGP.EvaluationContext ctx = TinyGPHarness.context();
+        for (int i = 0; i < TinyGP.fitness.length; i++) {
+            char[] program = arena ? TinyGP.arena.program(i) : TinyGP.population[i];
+            assertEquals("slot " + i, TinyGP.fitness[i], TinyGP.fitness_function(program, ctx), 0.0);
+        }
+    }
+}
@@ -0,0 +1,59 @@
+package pl.edu.agh;
+
+import junit.framework.TestCase;
+
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Programs sharing subtrees must get the same fitness from cached subtree vectors, within the memory budget.
+ */
+public class SubtreeCacheTest extends TestCase {
+    static final int VARNUMBER = 2;
+    static final int RANDOMNUMBER = 50;
+    static final int FITNESSCASES = 20000;  // 160 KB a vector, so a 1 MB budget has to evict
+
+    public void testCachedSubtreesMatchInterpreter() throws Exception {
+        Map<String, String> tags = TinyGPHarness.defaults();
+        tags.put("varnumber", String.valueOf(VARNUMBER));
+        tags.put("randomnumber", String.valueOf(RANDOMNUMBER));
+        tags.put("fitnesscases", String.valueOf(FITNESSCASES));
+        tags.put("EVALUATOR", "2");
+        tags.put("SUBTREE_CACHE_MB", "1");
+        TinyGPHarness.load(tags).run(SubtreeCacheTest.class, "compare");
+    }
+
+    static void compare() throws Exception {
+        Random rd = new Random(3);
+        TinyGPHarness.loadRandomTargets(rd, 10);
+        TinyGPHarness.randomConstants(rd);
+
+        char[][] shared = new char[12][];
+        for (int i = 0; i < shared.length; i++)
+            do shared[i] = TinyGPHarness.randomProgram(rd, VARNUMBER, RANDOMNUMBER, 5);
+            while (shared[i].length < 5);
+
+        TinyGP.EvaluationContext ctx = TinyGPHarness.context();
+        for (int p = 0; p < 400; p++) {
+            char[] subtree = shared[rd.nextInt(shared.length)];
+            char[] rest = TinyGPHarness.randomProgram(rd, VARNUMBER, RANDOMNUMBER, 3);
+            char[] program = new char[1 + subtree.length + rest.length];
+            program[0] = 110;  // ADD
+            System.arraycopy(subtree, 0, program, 1, subtree.length);
+            System.arraycopy(rest, 0, program, 1 + subtree.length, rest.length);
+
+            TinyGP.simplify(program, ctx);
+            double expected = TinyGP.stack_fitness(ctx);
+            double actual = TinyGP.closure_fitness(ctx);
+            if (Double.isNaN(expected))
+                assertTrue(Double.isNaN(actual));
+            else
+                assertEquals(expected, actual, 1e-9 * Math.max(1.0, Math.abs(expected)));
+        }
+
+        assertTrue(TinyGP.subtree_cache.hits.sum() > 0);
+        long bytes = TinyGP.subtree_cache.bytes;
+        assertTrue(bytes > 0);
+        assertTrue(bytes <= 1 << 20);
+    }
+}
@@ -0,0 +1,34 @@
+package pl.edu.agh;
+
+import junit.framework.TestCase;
+
+import java.util.Random;
+
+/**
+ * The subtree-end index must agree with a recursive walk of the prefix encoding.
+ */
+public class SubtreeEndsTest extends TestCase {
+    static final int VARNUMBER = 2;
+    static final int RANDOMNUMBER = 50;
+
+    public void testEndsMatchRecursiveWalk() {
+        Random rd = new Random(17);
+        for (int p = 0; p < 500; p++) {
+            char[] program = TinyGPHarness.randomProgram(rd, VARNUMBER, RANDOMNUMBER, 8);
+            int[] ends = new int[program.length];
+            TinyGP.subtree_ends(program, program.length, ends);
+            for (int i = 0; i < program.length; i++)
+                assertEquals("program " + p + " position " + i, end(program, i), ends[i]);
+            assertEquals(program.length, ends[0]);
+        }
+    }
+
+    static int end(char[] program, int i) {
+        char primitive = program[i];
+        if (primitive < 110)
+            return i + 1;
+        if (primitive <= 113)
+            return end(program, end(program, i + 1));
+        return end(program, i + 1);
+    }
+}
@@ -0,0 +1,116 @@
+package pl.edu.agh;
+
+import junit.framework.TestCase;
+
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * The stack evaluator with superinstructions must match the one without, with and without shared subexpressions,
+ * and every pattern must be fused and counted.
+ */
+public class SuperinstructionTest extends TestCase {
+    static final int VARNUMBER = 2;
+    static final int RANDOMNUMBER = 50;
+    static final int FITNESSCASES = 300;
+    static final char ADD = 110, MUL = 112, SIN = 115, COS = 116;
+
+    static final char X0 = 0, X1 = 1, C = VARNUMBER;
+    static final char[][] PATTERNS = {
+            {ADD, MUL, X0, X1, X1},               // FMA
+            {ADD, X1, MUL, X0, X1},               // FMA_SWAPPED
+            {MUL, X0, C},                         // MUL_CV
+            {ADD, MUL, C, X0, X1},                // FMA_CV
+            {ADD, X1, MUL, X0, C},                // FMA_CV, the other way round
+            {SIN, MUL, C, X1},                    // SIN_CV
+            {COS, MUL, X1, C},                    // COS_CV
+    };
+
+    TinyGPHarness plain;
+
+    static TinyGP.EvaluationContext ctx;  // of the engine the static methods run in
+
+    @Override
+    protected void setUp() throws Exception {
+        plain = load(false, false, true);
+    }
+
+    static TinyGPHarness load(boolean fused, boolean shared, boolean rewrite) throws Exception {
+        Map<String, String> tags = TinyGPHarness.defaults(VARNUMBER, RANDOMNUMBER, FITNESSCASES);
+        tags.put("EVALUATOR", "0");
+        tags.put("ALGEBRAIC_SIMPLIFICATION", String.valueOf(rewrite));
+        tags.put("SUPERINSTRUCTIONS", String.valueOf(fused));
+        tags.put("COMMON_SUBEXPRESSIONS", String.valueOf(shared));
+        TinyGPHarness gp = TinyGPHarness.load(tags);
+        gp.run(SuperinstructionTest.class, "prepare");
+        return gp;
+    }
+
+    static void prepare() throws Exception {  // the same fitness cases and constants in every engine
+        Random rd = new Random(53);
+        TinyGPHarness.loadRandomTargets(rd, 2);
+        TinyGPHarness.randomConstants(rd);
+        ctx = TinyGPHarness.context();
+    }
+
+    public void testFusedMatchesUnfused() throws Exception {
+        char[][] programs = new char[2000][];
+        Random rd = new Random(59);
+        for (int p = 0; p < programs.length; p++)
+            programs[p] = program(rd);
+        double[][] unfused = (double[][]) plain.run(SuperinstructionTest.class, "evaluate", (Object) programs);
+        for (boolean shared : new boolean[]{false, true}) {
+            double[][] fused = (double[][]) load(true, shared, true).run(SuperinstructionTest.class, "evaluate", (Object) programs);
+            for (int p = 0; p < programs.length; p++) {
+                double expected = unfused[0][p], actual = fused[0][p];
+                if (!Double.isFinite(expected) || Math.abs(expected) > 1e12)
+                    continue;  // a fused multiply-add rounds once, which matters next to cancellation at large magnitudes
+                assertEquals("program " + p, expected, actual, 1e-9 * Math.max(1.0, Math.abs(expected)));
+                assertTrue(fused[1][p] <= unfused[1][p]);
+            }
+        }
+    }
+
+    // the fitness of every program, and the length the stack evaluator runs: fused if it fuses
+    static double[][] evaluate(char[][] programs) {
+        double[][] results = new double[2][programs.length];
+        for (int p = 0; p < programs.length; p++) {
+            TinyGP.simplify(programs[p], ctx);
+            results[0][p] = TinyGP.stack_fitness(ctx);
+            results[1][p] = TinyGP.SUPERINSTRUCTIONS ? ctx.fused_length : ctx.length;
+        }
+        return results;
+    }
+
+    public void testEveryPatternIsFused() throws Exception {
+        double[][] expected = (double[][]) plain.run(SuperinstructionTest.class, "evaluate", (Object) PATTERNS);
+        load(true, false, false)  // operands stay where they are
+                .run(SuperinstructionTest.class, "everyPatternIsFused", expected[0]);
+    }
+
+    static void everyPatternIsFused(double[] expected) {
+        int[] patterns = {0, 1, 2, 3, 3, 4, 5};
+        int[] roots = {TinyGP.FMA, TinyGP.FMA_SWAPPED, TinyGP.MUL_CV, TinyGP.FMA_CV, TinyGP.SIN_CV, TinyGP.COS_CV};
+        for (int p = 0; p < PATTERNS.length; p++) {
+            String name = TinyGP.SUPERINSTRUCTION_NAMES[patterns[p]];
+            long before = TinyGP.superinstructions[patterns[p]].sum();
+            TinyGP.simplify(PATTERNS[p], ctx);
+            assertEquals(name, expected[p], TinyGP.stack_fitness(ctx), 1e-9);
+            assertEquals(name, roots[patterns[p]], (int) ctx.fused_operations[0]);
+            assertEquals(name, before + 1, TinyGP.superinstructions[patterns[p]].sum());
+        }
+    }
+
+    // random programs over all operations, the constants replaced by variables half the time so MUL of two
+    // variables, the FMA operand, shows up as well
+    static char[] program(Random rd) {
+        char[] program = TinyGPHarness.randomProgram(rd, VARNUMBER, RANDOMNUMBER, 6);
+        for (int i = 0; i < program.length; i++) {
+            if (program[i] >= VARNUMBER && program[i] < 110 && rd.nextBoolean())
+                program[i] = (char) rd.nextInt(VARNUMBER);
+            else if (program[i] >= 114 && rd.nextInt(3) == 0)
+                program[i] = rd.nextBoolean() ? SIN : COS;
+        }
+        return program;
+    }
+}
@@ -0,0 +1,262 @@
+package pl.edu.agh;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Loads the TinyGP engine with the settings tiny_gp_methods.fit passes it, each time in a class loader of its own
+ * since the engine reads them into static finals. The tests are loaded again with it, so test code {@link #run}
+ * runs there calls that engine directly, set up by the helpers below it.
+ */
+public class TinyGPHarness {
+    static final Path CLASSES = Path.of("target/classes"), TEST_CLASSES = Path.of("target/test-classes");
+    static final String PACKAGE = "pl.edu.agh.";
+
+    // the engine and the tests, not delegated to the class path that has them loaded with other settings;
+    // anything else, JUnit included, from the class path
+    static final class EngineLoader extends URLClassLoader {
+        EngineLoader() throws IOException {
+            super(new URL[]{CLASSES.toUri().toURL(), TEST_CLASSES.toUri().toURL()}, TinyGPHarness.class.getClassLoader());
+        }
+
+        @Override
+        protected Class<?> loadClass(String name, boolean resolve) throws ClassNotFoundException {
+            if (!name.startsWith(PACKAGE))
+                return super.loadClass(name, resolve);
+            synchronized (getClassLoadingLock(name)) {
+                Class<?> type = findLoadedClass(name);
+                if (type == null)
+                    type = findClass(name);
+                if (resolve)
+                    resolveClass(type);
+                return type;
+            }
+        }
+    }
+
+    final ClassLoader loader;
+
+    TinyGPHarness(ClassLoader loader) {
+        this.loader = loader;
+    }
+
+    /**
+     * @return the settings used by the Python TinyGP defaults, with all operations enabled
+     */
+    public static Map<String, String> defaults() {
+        Map<String, String> tags = new HashMap<>();
+        String[] ops = {"ADD", "SUB", "MUL", "DIV", "EXP", "SIN", "COS"};
+        for (int i = 0; i < ops.length; i++)
+            tags.put(ops[i], String.valueOf(110 + i));
+        tags.put("FSET_END", "116");
+        tags.put("DIVISION_CUT_OUT", "0.001");
+        tags.put("EXPONENT_CUT_OUT", "100.0");
+        tags.put("MAX_LEN", "10000");
+        tags.put("POPSIZE", "1000");
+        tags.put("DEPTH", "5");
+        tags.put("GENERATIONS", "5");
+        tags.put("TSIZE", "2");
+        tags.put("minrandom", "-5.0");
+        tags.put("maxrandom", "5.0");
+        tags.put("goal_fitness", "1e-5");
+        tags.put("varnumber", "1");
+        tags.put("fitnesscases", "101");
+        tags.put("randomnumber", "100");
+        tags.put("PMUT_PER_NODE", "0.05");
+        tags.put("CROSSOVER_PROB", "0.9");
+        tags.put("seed", "1");
+        tags.put("EVALUATOR", "1");
+        tags.put("METRIC", "0");
+        tags.put("SIMD", "false");
+        tags.put("COMPILE_THRESHOLD", "0");
+        tags.put("RNG_STREAMS", "0");
+        tags.put("REPLACEMENT", "0");
+        tags.put("MAX_NODES", "0");
+        tags.put("MAX_DEPTH", "0");
+        tags.put("PARSIMONY", "0");
+        tags.put("PARSIMONY_PRESSURE", "0.7");
+        tags.put("FITNESS_CACHE_SIZE", "0");
+        tags.put("POPULATION_ARENA", "false");
+        tags.put("SUBTREE_CACHE_MB", "0");
+        tags.put("INIT_METHOD", "0");
+        tags.put("MIN_DEPTH", "2");
+        tags.put("INIT_UNIQUE", "false");
+        tags.put("PRINT_BEST", "true");
+        tags.put("REJECTION_PERCENTILE", "0.0");
+        tags.put("CASE_ORDERING", "false");
+        tags.put("ALGEBRAIC_SIMPLIFICATION", "false");
+        tags.put("COMMON_SUBEXPRESSIONS", "false");
+        tags.put("SUPERINSTRUCTIONS", "false");
+        return tags;
+    }
+
+    /**
+     * @return the defaults for evaluating programs of varnumber variables and randomnumber constants
+     */
+    public static Map<String, String> defaults(int varnumber, int randomnumber, int fitnesscases) {
+        Map<String, String> tags = defaults();
+        tags.put("varnumber", String.valueOf(varnumber));
+        tags.put("randomnumber", String.valueOf(randomnumber));
+        tags.put("fitnesscases", String.valueOf(fitnesscases));
+        return tags;
+    }
+
+    /**
+     * Loads TinyGP with the settings given as tinygp.* system properties while it initializes,
+     * threads as well for the number of workers.
+     */
+    public static TinyGPHarness load(Map<String, String> tags) throws Exception {
+        Map<String, String> previous = new HashMap<>();
+        for (Map.Entry<String, String> tag : tags.entrySet())
+            previous.put(tag.getKey(), System.setProperty("tinygp." + tag.getKey(), tag.getValue()));
+        TinyGPHarness gp = new TinyGPHarness(new EngineLoader());
+        try {
+            Class.forName(PACKAGE + "TinyGP", true, gp.loader);
+        } catch (ClassNotFoundException e) {
+            throw new IllegalStateException(e);
+        } finally {
+            for (Map.Entry<String, String> tag : previous.entrySet()) {
+                if (tag.getValue() == null)
+                    System.clearProperty("tinygp." + tag.getKey());
+                else
+                    System.setProperty("tinygp." + tag.getKey(), tag.getValue());
+            }
+        }
+        gp.run(TinyGPHarness.class, "followSystemOut");
+        return gp;
+    }
+
+    /**
+     * Runs a static method of a test in the class loader of this engine, where it calls the engine directly.
+     * Arguments and results are of java.* types, which both sides share.
+     */
+    public Object run(Class<?> test, String method, Object... args) throws Exception {
+        Class<?> type = Class.forName(test.getName(), true, loader);
+        for (Method candidate : type.getDeclaredMethods()) {
+            if (candidate.getName().equals(method) && candidate.getParameterCount() == args.length
+                    && Modifier.isStatic(candidate.getModifiers())) {
+                candidate.setAccessible(true);
+                try {
+                    return candidate.invoke(null, args);
+                } catch (InvocationTargetException e) {
+                    if (e.getCause() instanceof Exception exception)
+                        throw exception;
+                    throw (Error) e.getCause();  // AssertionFailedError too
+                }
+            }
+        }
+        throw new IllegalArgumentException("No static method " + method + " in " + test.getName());
+    }
+
+    /**
+     * @return a random program in the prefix encoding produced by TinyGP.grow
+     */
+    public static char[] randomProgram(Random rd, int varnumber, int randomnumber, int depth) {
+        StringBuilder program = new StringBuilder();
+        grow(rd, program, varnumber, randomnumber, depth);
+        return program.toString().toCharArray();
+    }
+
+    static void grow(Random rd, StringBuilder program, int varnumber, int randomnumber, int depth) {
+        if (depth == 0 || (program.length() > 0 && rd.nextBoolean())) {
+            program.append((char) rd.nextInt(varnumber + randomnumber));
+            return;
+        }
+        char primitive = (char) (110 + rd.nextInt(7));
+        program.append(primitive);
+        grow(rd, program, varnumber, randomnumber, depth - 1);
+        if (primitive <= 113)
+            grow(rd, program, varnumber, randomnumber, depth - 1);
+    }
+
+    /**
+     * @return true if the JVM running the tests has the Vector API module
+     */
+    public static boolean hasVectorModule() {
+        return ModuleLayer.boot().findModule("jdk.incubator.vector").isPresent();
+    }
+
+    // The helpers below set up the engine of the class loader they run in.
+
+    static void followSystemOut() {
+        TinyGP.console = new PrintStream(new OutputStream() {  // follows System.out, which tests silence
+            @Override
+            public void write(int b) {
+                System.out.write(b);
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) {
+                System.out.write(b, off, len);
+            }
+        }, true);
+    }
+
+    /**
+     * Writes the fitness cases to a data file and loads them through TinyGP.loadTargets.
+     */
+    public static void loadTargets(double[][] targets) throws IOException {
+        Path file = Files.createTempFile("targets", ".dat");
+        StringBuilder text = new StringBuilder();
+        for (double[] row : targets) {
+            for (double value : row)
+                text.append(value).append(' ');
+            text.append('\n');
+        }
+        Files.write(file, text.toString().getBytes(StandardCharsets.UTF_8));
+        TinyGP.file = file.toString();
+        TinyGP.loadTargets();
+    }
+
+    /**
+     * Loads fitnesscases fitness cases of values drawn from [-range, range), the expected results as well.
+     * @return the cases as rows
+     */
+    public static double[][] loadRandomTargets(Random rd, double range) throws IOException {
+        double[][] targets = new double[TinyGP.fitnesscases][TinyGP.varnumber + 1];
+        for (double[] row : targets)
+            for (int j = 0; j <= TinyGP.varnumber; j++)
+                row[j] = rd.nextDouble() * 2 * range - range;
+        loadTargets(targets);
+        return targets;
+    }
+
+    /**
+     * Draws the constants from [-5, 5), as setup does from minrandom and maxrandom.
+     */
+    public static void randomConstants(Random rd) {
+        for (int i = 0; i < TinyGP.x.length; i++)
+            TinyGP.x[i] = rd.nextDouble() * 10 - 5;
+    }
+
+    public static TinyGP.EvaluationContext context() {
+        TinyGP.EvaluationContext ctx = new TinyGP.EvaluationContext();
+        ctx.variables = new double[TinyGP.varnumber];
+        return ctx;
+    }
+
+    /**
+     * Runs TinyGP on the loaded fitness cases, which it loads again, with System.out silenced.
+     */
+    public static TinyGP evolve() {
+        PrintStream out = System.out;
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+        try {
+            return new TinyGP();
+        } finally {
+            System.setOut(out);
+        }
+    }
+}
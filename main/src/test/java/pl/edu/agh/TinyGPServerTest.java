@@ -0,0 +1,132 @@
+package pl.edu.agh;
+
+import junit.framework.TestCase;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+
+/**
+ * Jobs sent to the engine server over its socket must stream back what a TinyGP process prints, reuse a warm
+ * engine for the same settings with the same results as a fresh one, and run side by side.
+ */
+public class TinyGPServerTest extends TestCase {
+    TinyGPServer server;
+    Path data;
+
+    @Override
+    protected void setUp() throws Exception {
+        server = new TinyGPServer(0);
+        Thread serving = new Thread(server::serve);
+        serving.setDaemon(true);
+        serving.start();
+
+        Random rd = new Random(23);
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < 20; i++) {
+            double x = rd.nextDouble() * 4 - 2;
+            text.append(x).append(' ').append(x * x - x).append('\n');
+        }
+        data = Files.createTempFile("targets", ".dat");
+        Files.write(data, text.toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    @Override
+    protected void tearDown() throws IOException {
+        server.close();
+    }
+
+    public void testRepeatedJobsReuseTheEngine() throws Exception {
+        List<String> first = job(settings(500, 1));
+        List<String> second = job(settings(500, 1));
+        assertEquals("END", second.get(second.size() - 1));
+        assertEquals(results(first), results(second));  // nothing left over from the first run
+        assertEquals(1, loaded());
+        assertEquals(1, server.reused.get());
+    }
+
+    public void testConcurrentJobs() throws Exception {
+        List<List<String>> outputs = new ArrayList<>();
+        List<Thread> clients = new ArrayList<>();
+        for (int popsize : new int[]{400, 600}) {
+            List<String> output = new ArrayList<>();
+            outputs.add(output);
+            Thread client = new Thread(() -> {
+                try {
+                    output.addAll(job(settings(popsize, 2)));
+                } catch (IOException e) {
+                    output.add("ERROR " + e);
+                }
+            });
+            clients.add(client);
+            client.start();
+        }
+        for (Thread client : clients)
+            client.join();
+        for (List<String> output : outputs) {
+            assertEquals(output.toString(), "END", output.get(output.size() - 1));
+            assertEquals(3, results(output).size() - 1);  // the constants, then one line per generation
+        }
+        assertEquals(2, loaded());
+    }
+
+    public void testBadDataIsReported() throws Exception {
+        Map<String, String> settings = settings(500, 1);
+        settings.put("file", data.resolveSibling("missing.dat").toString());
+        List<String> output = job(settings);
+        assertTrue(output.toString(), output.get(output.size() - 1).startsWith("ERROR Data file not found"));
+        output = job(settings(500, 1));
+        assertEquals("END", output.get(output.size() - 1));
+        assertEquals(1, loaded());  // the engine survived the bad job
+    }
+
+    Map<String, String> settings(int popsize, long seed) {
+        Map<String, String> settings = new TreeMap<>();
+        settings.put("POPSIZE", String.valueOf(popsize));
+        settings.put("GENERATIONS", "3");
+        settings.put("goal_fitness", "-1.0");  // never solved, run every generation
+        settings.put("fitnesscases", "20");
+        settings.put("RNG_STREAMS", "1");
+        settings.put("SIMD", "false");
+        settings.put("seed", String.valueOf(seed));
+        settings.put("file", data.toString());
+        return settings;
+    }
+
+    List<String> job(Map<String, String> settings) throws IOException {
+        try (Socket socket = new Socket(InetAddress.getLoopbackAddress(), server.port())) {
+            Writer out = new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8);
+            for (Map.Entry<String, String> setting : settings.entrySet())
+                out.write(setting.getKey() + "=" + setting.getValue().replace("\\", "\\\\") + "\n");
+            out.write("\n");
+            out.flush();
+            BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+            List<String> lines = new ArrayList<>();
+            for (String line = in.readLine(); line != null; line = in.readLine())
+                lines.add(line);
+            return lines;
+        }
+    }
+
+    static List<String> results(List<String> output) {  // what fit parses, after TOKEN
+        int token = output.indexOf("TOKEN");
+        assertTrue(output.toString(), token >= 0);
+        return new ArrayList<>(output.subList(token + 1, output.size() - 1));
+    }
+
+    int loaded() {
+        return server.loaded.get();
+    }
+}
@@ -0,0 +1,58 @@
+package pl.edu.agh;
+
+import junit.framework.TestCase;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A task that throws on a worker must reach the thread waiting for its round, not leave it waiting for good.
+ */
+public class WorkerFailureTest extends TestCase {
+    public void testRuntimeExceptionIsRethrown() throws Exception {
+        IllegalStateException failure = new IllegalStateException("worker failed");
+        assertSame(failure, awaitFailure(failure));
+    }
+
+    public void testErrorIsRethrown() throws Exception {
+        StackOverflowError failure = new StackOverflowError();
+        assertSame(failure, awaitFailure(failure));
+    }
+
+    public void testRoundWithoutFailureCompletes() throws Exception {
+        AtomicInteger done = new AtomicInteger();
+        TinyGP.Round round = new TinyGP.Round(8);
+        for (int t = 0; t < 8; t++)
+            round.submit(done::incrementAndGet);
+        round.await("Test");
+        assertEquals(8, done.get());
+    }
+
+    // what the waiting thread gets once one of the round's tasks throws failure
+    static Throwable awaitFailure(Throwable failure) throws Exception {
+        AtomicInteger done = new AtomicInteger();
+        TinyGP.Round round = new TinyGP.Round(4);
+        for (int t = 0; t < 4; t++) {
+            int task = t;
+            round.submit(() -> {
+                if (task == 1) {
+                    if (failure instanceof Error error)
+                        throw error;
+                    throw (RuntimeException) failure;
+                }
+                done.incrementAndGet();
+            });
+        }
+        CompletableFuture<Void> waiting = CompletableFuture.runAsync(() -> round.await("Test"));
+        try {
+            waiting.get(10, TimeUnit.SECONDS);
+        } catch (ExecutionException e) {
+            assertEquals("the other tasks still run", 3, done.get());
+            return e.getCause();
+        }
+        fail("await returned normally");
+        return null;
+    }
+}
@@ -0,0 +1,52 @@
+"""
+Compares the startup of short engine runs: the compiled classes and the engine jar started cold,
+and the jar with its class-data-sharing archive (and AOT cache, on JDK 25+), built first if missing or stale.
+Needs the engine jar, mvn -P startup package in main, which leaves out the classes string concatenation spins.
+
+usage: python startup_benchmark.py [java_path] [runs] [population_size] [generations]
+"""
+import statistics
+import subprocess
+import sys
+import tempfile
+import time
+
+from tiny_gp import tiny_gp_methods
+
+if __name__ == "__main__":
+    java_path = sys.argv[1] if len(sys.argv) > 1 else "java"
+    runs = int(sys.argv[2]) if len(sys.argv) > 2 else 10
+    population_size = int(sys.argv[3]) if len(sys.argv) > 3 else 1000
+    generations = int(sys.argv[4]) if len(sys.argv) > 4 else 3
+
+    engine = tiny_gp_methods.engine_classpath()
+    jar = tiny_gp_methods.engine_jar(engine)
+    if jar is None:
+        sys.exit("No engine jar, run mvn package in main")
+    classes = tiny_gp_methods.module_dir.parent / "main" / "target" / "classes"
+    archive, cache = tiny_gp_methods.startup_archives()
+
+    variants = {"classes": ["-cp", str(classes), "pl.edu.agh.TinyGP"], "java -jar": ["-jar", str(jar)]}
+    if not (archive.is_file() and archive.stat().st_mtime >= jar.stat().st_mtime):
+        tiny_gp_methods.build_startup_archive(java_path)
+    variants["java -jar, CDS"] = [f"-XX:SharedArchiveFile={archive}", "-jar", str(jar)]
+    if tiny_gp_methods.java_feature(java_path) >= 25:
+        tiny_gp_methods.build_startup_archive(java_path, profile=True)
+        variants["java -jar, AOT cache"] = [f"-XX:AOTCache={cache}", "-jar", str(jar)]
+
+    with tempfile.TemporaryDirectory() as run_dir:
+        with open(f"{run_dir}/targets.dat", 'w') as f:
+            for i in range(101):
+                f.write(f"{i / 10 - 5} {(i / 10 - 5) ** 2 - (i / 10 - 5)}\n")
+        config = tiny_gp_methods.create_config_file({"POPSIZE": population_size, "GENERATIONS": generations,
+                                                     "goal_fitness": 0.0, "seed": 1, "SIMD": False},
+                                                    f"{run_dir}/tinygp.properties")
+        print(f"{'start':<24}{'median':>10}{'min':>10}")
+        for name, arguments in variants.items():
+            times = []
+            for _ in range(runs):
+                start = time.perf_counter()
+                subprocess.run([java_path, "-Dfile.encoding=UTF-8", f"-Dtinygp.config={config}", *arguments],
+                               cwd=run_dir, stdout=subprocess.DEVNULL, check=True)
+                times.append(time.perf_counter() - start)
+            print(f"{name:<24}{statistics.median(times) * 1000:>8.0f}ms{min(times) * 1000:>8.0f}ms")
@@ -20,6 +20,34 @@ class FitnessFunction(StrEnum):
     MSE = "(result - actual) * (result - actual)"
 
 
+class Evaluator(IntEnum):
+    STACK = 0  # interpret the program once per fitness case
+    BATCH = 1  # interpret the program once per block of fitness cases, column-major
+    CLOSURE = 2  # compile the program to a tree of nodes, walk it once per block of fitness cases
+
+
+class RngStreams(IntEnum):
+    PER_WORKER = 0  # reproducible for a given seed and thread count
+    PER_INDIVIDUAL = 1  # reproducible for a given seed and any thread count
+
+
+class Replacement(IntEnum):
+    STEADY_STATE = 0  # offspring replace negative tournament losers right away
+    GENERATIONAL = 1  # offspring fill the next generation, the best individual survives
+
+
+class Initialization(IntEnum):
+    GROW = 0  # terminals may end any branch before the depth is reached
+    FULL = 1  # every branch has the full depth
+    RAMPED_HALF_AND_HALF = 2  # depths ramped from min_depth to depth, every other program full
+
+
+class Parsimony(IntEnum):
+    NONE = 0
+    DOUBLE_TOURNAMENT = 1  # size tournament between two fitness tournament winners (or losers)
+    TARPEIAN = 2  # longer than average offspring are killed before being evaluated
+
+
 class Operation(IntEnum):
     ADD = 0
     SUB = auto()
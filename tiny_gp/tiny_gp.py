@@ -1,4 +1,7 @@
 import json
+import subprocess
+from typing import Callable
+
 import matplotlib.pyplot as plt
 import imageio.v2 as imageio
 import numpy as np
@@ -6,7 +9,8 @@ import io
 from matplotlib import pyplot as plt
 from mpl_toolkits.mplot3d import Axes3D
 
-from tiny_gp import tiny_gp_methods, Hist, Individual, FitnessFunction, Operation, FUN_2ARG
+from tiny_gp import tiny_gp_methods, Hist, Entry, Individual, FitnessFunction, Operation, Evaluator, RngStreams, Replacement, Parsimony, \
+    Initialization, FUN_2ARG
 
 
 class TinyGP:
@@ -33,7 +37,30 @@ class TinyGP:
     fitness_function: FitnessFunction = FitnessFunction.MAE
     operations: set[Operation] = {Operation.ADD, Operation.SUB, Operation.MUL, Operation.DIV}
     goal_fitness: float = 1e-5
+    evaluator: Evaluator = Evaluator.BATCH
+    simd: bool = True
+    compile_threshold: int = 0
+    rng_streams: RngStreams = RngStreams.PER_WORKER
+    replacement: Replacement = Replacement.STEADY_STATE
+    max_nodes: int = 0
+    max_depth: int = 0
+    parsimony: Parsimony = Parsimony.NONE
+    parsimony_pressure: float = 0.7
+    algebraic_simplification: bool = False
+    common_subexpressions: bool = False
+    superinstructions: bool = False
+    fitness_cache_size: int = 65536
+    population_arena: bool = False
+    subtree_cache_mb: int = 0
+    initialization: Initialization = Initialization.GROW
+    min_depth: int = 2
+    init_unique: bool = False
+    print_best: bool = True
+    rejection_percentile: float = 0.0
+    case_ordering: bool = False
     java_path: str | None = None
+    server: tuple[str, int] | None = None
+    server_process: subprocess.Popen | None = None
 
     def __init__(
             self,
@@ -50,7 +77,28 @@ class TinyGP:
             crossover_probability: float = 0.9,
             fitness_function: FitnessFunction = FitnessFunction.MAE,
             operations: set[Operation] | None = None,
-            goal_fitness: float = 1e-5
+            goal_fitness: float = 1e-5,
+            evaluator: Evaluator = Evaluator.BATCH,
+            simd: bool = True,
+            compile_threshold: int = 0,
+            rng_streams: RngStreams = RngStreams.PER_WORKER,
+            replacement: Replacement = Replacement.STEADY_STATE,
+            max_nodes: int = 0,
+            max_depth: int = 0,
+            parsimony: Parsimony = Parsimony.NONE,
+            parsimony_pressure: float = 0.7,
+            algebraic_simplification: bool = False,
+            common_subexpressions: bool = False,
+            superinstructions: bool = False,
+            fitness_cache_size: int = 65536,
+            population_arena: bool = False,
+            subtree_cache_mb: int = 0,
+            initialization: Initialization = Initialization.GROW,
+            min_depth: int = 2,
+            init_unique: bool = False,
+            print_best: bool = True,
+            rejection_percentile: float = 0.0,
+            case_ordering: bool = False
     ):
         """
         Sets the parameters of the evolution.
@@ -67,6 +115,38 @@ class TinyGP:
         :param fitness_function: Function to calculate error
         :param operations: Operations used by the simulated individuals
         :param goal_fitness: Maximum allowed error
+        :param evaluator: Fitness evaluation engine
+        :param simd: Use the Vector API kernels in the batch evaluator when the JVM provides them
+        :param compile_threshold: Evaluations of the same program before it's compiled to bytecode, 0 disables
+        :param rng_streams: How random streams are derived from the seed for the worker threads
+        :param replacement: Steady-state or generational (race-free) replacement of the population
+        :param max_nodes: Longest offspring crossover may produce, other crossover points are tried otherwise, 0 disables
+        :param max_depth: Deepest offspring crossover may produce (functions on a path from the root), 0 disables
+        :param parsimony: Size pressure applied in the tournaments or to the offspring
+        :param parsimony_pressure: Chance the shorter individual wins the size tournament, or a longer than average
+            offspring is killed with Tarpeian parsimony (around 0.3 is usual there)
+        :param algebraic_simplification: Rewrite programs before evaluation with identity, annihilator and
+            reassociation rules and a canonical operand order, which rounds differently where constants are merged,
+            so runs no longer reproduce those without it
+        :param common_subexpressions: Evaluate repeated subtrees of a program once, in the stack and batch evaluators;
+            pays off when programs repeat subtrees, which the per generation statistics show
+        :param superinstructions: Fuse frequent operation patterns (multiply-add, constant times variable, sine and
+            cosine of a scaled variable) into single instructions of the stack evaluator; the statistics count each.
+            Multiply-add rounds once, so runs no longer reproduce those without it
+        :param fitness_cache_size: Number of simplified programs whose fitness is remembered, 0 disables
+        :param population_arena: Keep the programs of the population in off-heap chunks instead of one array each,
+            for very large populations; the JVM's -XX:MaxDirectMemorySize has to fit them
+        :param subtree_cache_mb: Memory budget in MB for output vectors of frequent subtrees, used by the closure
+            evaluator, 0 disables
+        :param initialization: How the initial programs are grown, ramped half-and-half ramps their depth over
+            min_depth..depth and grows every other one full
+        :param min_depth: Shallowest initial programs of the ramped half-and-half initialization
+        :param init_unique: Redraw initial programs equal to one drawn already
+        :param print_best: Print the best program as an expression every generation, the history keeps it anyway
+        :param rejection_percentile: Percentile of the population's errors (100 is the worst one) past which the
+            evaluation of a program stops and it's rejected, 0 disables
+        :param case_ordering: Evaluate the fitness cases the population gets most wrong first, so rejection happens
+            sooner, used with rejection_percentile
         """
         if operations is None:
             operations = {Operation.ADD, Operation.SUB, Operation.MUL, Operation.DIV}
@@ -90,20 +170,74 @@ class TinyGP:
         self.fitness_function = fitness_function
         self.operations = operations
         self.goal_fitness = goal_fitness
+        self.evaluator = evaluator
+        self.simd = simd
+        self.compile_threshold = compile_threshold
+        self.rng_streams = rng_streams
+        self.replacement = replacement
+        self.max_nodes = max_nodes
+        self.max_depth = max_depth
+        self.parsimony = parsimony
+        self.parsimony_pressure = parsimony_pressure
+        self.algebraic_simplification = algebraic_simplification
+        self.common_subexpressions = common_subexpressions
+        self.superinstructions = superinstructions
+        self.fitness_cache_size = fitness_cache_size
+        self.population_arena = population_arena
+        self.subtree_cache_mb = subtree_cache_mb
+        self.initialization = initialization
+        self.min_depth = min_depth
+        self.init_unique = init_unique
+        self.print_best = print_best
+        self.rejection_percentile = rejection_percentile
+        self.case_ordering = case_ordering
 
     @staticmethod
     def set_java_path(path: str):
         TinyGP.java_path = path
 
-    def fit(self, targets: np.ndarray, random_state: int = -1) -> Hist:
+    @staticmethod
+    def build_startup_archive(profile: bool = False):
+        """
+        Build the startup archive of the engine jar from a short training run, the fits after map it
+        and start faster; with profile an AOT cache with the method profiles of the run (JDK 25+)
+        """
+        tiny_gp_methods.build_startup_archive(TinyGP.java_path, profile)
+
+    @staticmethod
+    def set_server(host: str, port: int):
+        """Run every fit on the engine server listening there, see start_server"""
+        TinyGP.server = (host, port)
+
+    @staticmethod
+    def start_server(port: int = 0):
+        """
+        Start the engine server and run every fit on it, so fits after the first one skip the JVM startup
+        and run on code the JIT already compiled
+        """
+        TinyGP.stop_server()
+        TinyGP.server_process, TinyGP.server = tiny_gp_methods.start_server(TinyGP.java_path, port)
+
+    @staticmethod
+    def stop_server():
+        """Stop the engine server started by start_server, fits start a JVM each again"""
+        if TinyGP.server_process is not None:
+            TinyGP.server_process.terminate()
+            TinyGP.server_process.wait()
+            TinyGP.server_process = None
+        TinyGP.server = None
+
+    def fit(self, targets: np.ndarray, random_state: int = -1,
+            on_generation: Callable[[Entry], None] | None = None) -> Hist:
         """
         Run simulation.
         :param targets: Array with rows equal number of fitness cases,
                         columns equal the number variables + last column for the result of the function
         :param random_state: Seed for RNG
+        :param on_generation: Called with each generation's entry as soon as the engine reports it
         :return: History
         """
-        return tiny_gp_methods.fit(self, targets, random_state)
+        return tiny_gp_methods.fit(self, targets, random_state, on_generation)
 
     def _map_operations(self) -> dict[str, int]:
         """
@@ -1,13 +1,18 @@
+import functools
+import json
 import re
+import socket
+import struct
 import subprocess
+import tempfile
 
 import numpy as np
-from typing import TYPE_CHECKING
+from typing import TYPE_CHECKING, Callable
 
 if TYPE_CHECKING:
     from tiny_gp import TinyGP
 
-from tiny_gp import Hist, Entry, Individual, DIVISION_CUT_OUT, EXPONENT_CUT_OUT, FSET_START, Operation, FUN_1ARG
+from tiny_gp import Hist, Entry, Individual, DIVISION_CUT_OUT, EXPONENT_CUT_OUT, FSET_START, Operation, FUN_1ARG, FitnessFunction
 
 from pathlib import Path
 
@@ -40,6 +45,168 @@ def map_operations(self: "TinyGP") -> dict[str, int]:
     return operations
 
 
+@functools.cache
+def has_vector_module(java_path: str) -> bool:
+    """
+    :return: True if the JVM ships the jdk.incubator.vector module used by the SIMD kernels
+    """
+    try:
+        modules = subprocess.run([java_path, "--list-modules"], capture_output=True, text=True).stdout
+    except OSError:
+        return False
+    return any(line.startswith("jdk.incubator.vector@") for line in modules.splitlines())
+
+
+def engine_classpath() -> list[str]:
+    """
+    :return: java arguments running the engine of the main module: its jar (mvn package), else its classes
+             (mvn compile)
+    """
+    engine_dir = module_dir.parent / "main"
+    jar = engine_dir / "target" / "main-1.0.jar"
+    if jar.is_file():
+        return ["-cp", str(jar), "pl.edu.agh.TinyGP"]
+    classes = engine_dir / "target" / "classes"
+    if (classes / "pl" / "edu" / "agh" / "TinyGP.class").is_file():
+        return ["-cp", str(classes), "pl.edu.agh.TinyGP"]
+    raise RuntimeError("The engine is not built, run mvn compile or mvn package in main")
+
+
+def engine_jar(engine: list[str]) -> Path | None:
+    """
+    :return: the jar engine_classpath runs, if it runs one
+    """
+    return Path(engine[1]) if engine[0] == "-cp" and engine[1].endswith(".jar") else None
+
+
+@functools.cache
+def java_feature(java_path: str) -> int:
+    """
+    :return: feature release of the JVM, e.g. 17
+    """
+    version = subprocess.run([java_path, "-version"], capture_output=True, text=True).stderr
+    match = re.search(r'version "(\d+)', version)
+    return int(match.group(1)) if match else 0
+
+
+def startup_archives() -> tuple[Path, Path]:
+    """
+    :return: paths of the class-data-sharing archive and of the AOT cache (JDK 25+) of the engine jar
+    """
+    target = module_dir.parent / "main" / "target"
+    return target / "tinygp.jsa", target / "tinygp.aot"
+
+
+def build_startup_archive(java_path: str, profile: bool = False) -> Path:
+    """
+    Records the classes a short training run of the engine jar loads into an application class-data-sharing archive,
+    which later runs map instead of loading and verifying the classes again. With profile, records an AOT cache
+    instead (JDK 25+), which also holds the linked classes and the method profiles of the training run, so the JIT
+    starts from them. The runs of fit use it while it is newer than the jar, build it again after mvn package;
+    mvn -P startup package builds the jar that loads the fewest classes.
+    :return: path of the archive
+    """
+    engine = engine_classpath()
+    if engine_jar(engine) is None:
+        raise RuntimeError("Startup archives need the engine jar, run mvn package in main")
+    archive, cache = startup_archives()
+    if profile and java_feature(java_path) < 25:
+        raise RuntimeError("Training-run profiles need JDK 25 or newer, build the class-data-sharing archive instead")
+    output = cache if profile else archive
+    output.unlink(missing_ok=True)
+    modules = ["--add-modules", "jdk.incubator.vector"] if has_vector_module(java_path) else []
+    record = f"-XX:AOTCacheOutput={output}" if profile else f"-XX:ArchiveClassesAtExit={output}"
+    with tempfile.TemporaryDirectory() as training:
+        with open(f"{training}/targets.dat", 'w') as f:
+            for i in range(50):
+                f.write(f"{i / 10 - 2.5} {(i / 10 - 2.5) ** 2 - 1}\n")
+        config = create_config_file({"POPSIZE": 2000, "GENERATIONS": 3, "fitnesscases": 50, "seed": 1,
+                                     "SIMD": bool(modules), "file": f"{training}/targets.dat"},
+                                    f"{training}/tinygp.properties")
+        subprocess.run([java_path, *modules, record, "-Dfile.encoding=UTF-8", f"-Dtinygp.config={config}", *engine],
+                       cwd=training, stdout=subprocess.DEVNULL, check=True)
+    if profile:
+        archive.unlink(missing_ok=True)  # one or the other
+    else:
+        cache.unlink(missing_ok=True)
+    return output
+
+
+def startup_options(engine: list[str]) -> list[str]:
+    """
+    :return: java options mapping the startup archive of the engine jar, if it was built for the current jar
+    """
+    jar = engine_jar(engine)
+    if jar is None:
+        return []
+    archive, cache = startup_archives()
+    if cache.is_file() and cache.stat().st_mtime >= jar.stat().st_mtime:
+        return [f"-XX:AOTCache={cache}"]
+    if archive.is_file() and archive.stat().st_mtime >= jar.stat().st_mtime:
+        return [f"-XX:SharedArchiveFile={archive}"]
+    return []
+
+
+def to_properties(settings: dict) -> str:
+    """
+    :return: the settings as the engine reads them, in the format of java.util.Properties
+    """
+    text = ""
+    for name, value in settings.items():
+        if isinstance(value, bool):
+            value = str(value).lower()
+        text += f"{name}={str(value).replace(chr(92), chr(92) * 2)}\n"  # backslashes of Windows paths escaped
+    return text
+
+
+def create_config_file(settings: dict, file: str = "tinygp.properties") -> str:
+    """
+    Writes the settings of a run where the engine reads them, -Dtinygp.config
+    :return: path of the file
+    """
+    with open(file, 'w', encoding='utf-8') as f:
+        f.write(to_properties(settings))
+    return str(Path(file).resolve())
+
+
+def start_server(java_path: str, port: int = 0) -> tuple[subprocess.Popen, tuple[str, int]]:
+    """
+    Starts the engine server of the main module (mvn compile or mvn package first), which keeps engines warm
+    between fits
+    :return: the server process and its address
+    """
+    modules = ["--add-modules", "jdk.incubator.vector"] if has_vector_module(java_path) else []
+    classpath = engine_classpath()
+    process = subprocess.Popen(
+        [java_path, *modules, "-Dfile.encoding=UTF-8", *classpath[:2], "pl.edu.agh.TinyGPServer", str(port)],
+        stdout=subprocess.PIPE,
+        text=True,
+        encoding='utf-8'
+    )
+    line = process.stdout.readline()
+    if not line.startswith("Listening on "):
+        process.kill()
+        raise RuntimeError(f"Engine server did not start: {line}")
+    return process, ("127.0.0.1", int(line.split()[-1]))
+
+
+def run_on_server(address: tuple[str, int], settings: dict):
+    """
+    Sends a fit job to the engine server
+    :return: lines the run prints, as they come
+    """
+    with socket.create_connection(address) as connection:
+        connection.sendall((to_properties(settings) + "\n").encode("utf-8"))  # an empty line ends the job
+        with connection.makefile('r', encoding='utf-8') as lines:
+            for line in lines:
+                if line == "END\n":
+                    return
+                if line.startswith("ERROR"):
+                    raise RuntimeError(f"Engine server: {line.rstrip()}")
+                yield line
+    raise RuntimeError("Engine server closed the connection")
+
+
 def create_target_file(targets: np.ndarray):
     with open('targets.dat', 'w') as f:
         for row in targets:
@@ -49,24 +216,34 @@ def create_target_file(targets: np.ndarray):
             f.write(f'{text}\n')
 
 
-def fit(self: "TinyGP", targets: np.ndarray, seed: int = -1):
+def create_binary_target_file(targets: np.ndarray, file: str = "targets.bin") -> str:
+    # the column format TinyGP.load_binary maps: a 32-byte little-endian header, then each variable's column and
+    # the expected results, written straight from the array instead of formatted and parsed back
+    rows, columns = targets.shape
+    with open(file, 'wb') as f:
+        f.write(struct.pack('<8siiqii', b"TGPCASES", 1, 8, rows, columns - 1, 0))
+        np.ascontiguousarray(targets.T, dtype='<f8').tofile(f)
+    return str(Path(file).resolve())
+
+
+def fit(self: "TinyGP", targets: np.ndarray, seed: int = -1, on_generation: Callable[[Entry], None] | None = None):
     self.seed = seed
     self.targets = targets
     self.var_number = targets.shape[1] - 1
     self.fitness_cases = targets.shape[0]
 
-    create_target_file(self.targets)
+    targets_file = create_binary_target_file(self.targets)
 
     self.hist = Hist()  # reset history
     assert self.var_number + self.constant_count <= FSET_START, f"Sum of variable count and constant count must be less than {FSET_START}."
     # Operations
     operations = map_operations(self)
 
-    pattern = re.compile(r"//TAG\{(.*?)}")
-
-    def repl(match):
-        var_name = match.group(1)
-        return str(variables.get(var_name))
+    engine = engine_classpath()
+    if self.server is not None:  # its JVM has the module if the JDK ships it, else the engine falls back
+        simd = self.simd
+    else:
+        simd = self.simd and has_vector_module(self.java_path)
 
     variables = {
         "MAX_LEN": int(self.max_length),
@@ -84,39 +261,80 @@ def fit(self: "TinyGP", targets: np.ndarray, seed: int = -1):
         "PMUT_PER_NODE": float(self.permutation_per_node),
         "CROSSOVER_PROB": float(self.crossover_probability),
         "seed": int(self.seed),
-        # "targets": np.array2string(self.targets, separator=',').replace("[", "{").replace("]", "}"),
-        # "file_name": str(self.file_name),
-        "fitness_function": self.fitness_function,
-        "goal_fitness": self.goal_fitness,
-        "FSET_START": FSET_START,
+        "file": targets_file,
+        "goal_fitness": float(self.goal_fitness),
+        "EVALUATOR": int(self.evaluator),
+        "METRIC": list(FitnessFunction).index(self.fitness_function),
+        "SIMD": simd,
+        "COMPILE_THRESHOLD": int(self.compile_threshold),
+        "RNG_STREAMS": int(self.rng_streams),
+        "REPLACEMENT": int(self.replacement),
+        "MAX_NODES": int(self.max_nodes),
+        "MAX_DEPTH": int(self.max_depth),
+        "PARSIMONY": int(self.parsimony),
+        "PARSIMONY_PRESSURE": float(self.parsimony_pressure),
+        "ALGEBRAIC_SIMPLIFICATION": bool(self.algebraic_simplification),
+        "COMMON_SUBEXPRESSIONS": bool(self.common_subexpressions),
+        "SUPERINSTRUCTIONS": bool(self.superinstructions),
+        "FITNESS_CACHE_SIZE": int(self.fitness_cache_size),
+        "POPULATION_ARENA": bool(self.population_arena),
+        "SUBTREE_CACHE_MB": int(self.subtree_cache_mb),
+        "INIT_METHOD": int(self.initialization),
+        "MIN_DEPTH": int(self.min_depth),
+        "INIT_UNIQUE": bool(self.init_unique),
+        "PRINT_BEST": bool(self.print_best),
+        "REJECTION_PERCENTILE": float(self.rejection_percentile),
+        "CASE_ORDERING": bool(self.case_ordering),
+        "OUTPUT": 1,  # NDJSON records, each generation as soon as the engine has it
     } | operations  # add operations
 
-    with open(f"{module_dir}/tiny_gp_java/TinyGP.java", 'r', encoding='utf-8') as f:
-        content = f.read()
-
-    compiled = pattern.sub(repl, content)
-
-    with open(f"{module_dir}/tiny_gp_java/TinyGP_compiled.java", 'w', encoding='utf-8') as f:
-        f.write(compiled)
-
+    x: list[float] = []
     is_token = False
     output: str = ""
 
+    def error(value: float | None) -> float:
+        """
+        :return: an error of a record, which writes infinite and NaN ones as null: inf, an error too large to tell
+        """
+        return float("inf") if value is None else value
+
+    def add_entry(gen: int, avg_fitness: float, best_fitness: float, avg_size: float, best: list[int]):
+        entry = Entry(gen, avg_fitness, best_fitness, avg_size, Individual(list(map(chr, best)), x, self.var_number))
+        entry.best_individual.operations = operations
+        self.hist.append(entry)
+        if on_generation is not None:
+            on_generation(entry)
+
     def run_java():
         """
-        start TinyGP.java
+        run the engine with the settings of this run, on the engine server when there is one
         """
+        nonlocal x
         nonlocal is_token
         nonlocal output
-        process = subprocess.Popen(
-            [self.java_path, "-Dfile.encoding=UTF-8", f"{module_dir}/tiny_gp_java/TinyGP_compiled.java"],
-            stdout=subprocess.PIPE,
-            stderr=subprocess.STDOUT,
-            text=True,
-            encoding='utf-8'
-        )
-        for line in process.stdout:
-            if is_token:
+        if self.server is not None:
+            lines = run_on_server(self.server, variables)
+        else:
+            config = create_config_file(variables)
+            modules = ["--add-modules", "jdk.incubator.vector"] if simd else []
+            process = subprocess.Popen(
+                [self.java_path, *modules, *startup_options(engine), "-Dfile.encoding=UTF-8", f"-Dtinygp.config={config}",
+                 *engine],
+                stdout=subprocess.PIPE,
+                stderr=subprocess.STDOUT,
+                text=True,
+                encoding='utf-8'
+            )
+            lines = process.stdout
+        for line in lines:
+            if line.startswith('{"'):
+                record = json.loads(line)
+                if "constants" in record:
+                    x = record["constants"]
+                else:
+                    add_entry(record["gen"], error(record["avg_fitness"]), error(record["best_fitness"]),
+                              record["avg_size"], record["best"])
+            elif is_token:  # the text output of an engine without OUTPUT, parsed once the run is over
                 output += line
             elif "TOKEN" in line:
                 is_token = True
@@ -127,22 +345,14 @@ def fit(self: "TinyGP", targets: np.ndarray, seed: int = -1):
 
     run_java()
 
-    x = list(map(float, output.split("\n")[0].split()))
-
-    for line in output.split("\n")[1:]:
-        numbers = line.split()
-        if len(numbers) == 0:
-            continue
-        self.hist.append(Entry(
-                int(numbers[0]),
-                float(numbers[1]),
-                float(numbers[2]),
-                float(numbers[3]),
-                Individual(list(map(chr, map(int, list(numbers[4:])))), x, self.var_number)
-            ))
-
-    for e in self.hist.entries:
-        e.best_individual.operations = operations
+    if is_token:
+        x = list(map(float, output.split("\n")[0].split()))
+        for line in output.split("\n")[1:]:
+            numbers = line.split()
+            if len(numbers) == 0:
+                continue
+            add_entry(int(numbers[0]), float(numbers[1]), float(numbers[2]), float(numbers[3]),
+                      list(map(int, numbers[4:])))
 
     self.best_individual = self.hist.entries[-1].best_individual  # save the best
 